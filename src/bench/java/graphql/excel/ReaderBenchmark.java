@@ -0,0 +1,301 @@
+package graphql.excel;
+
+import graphql.model.DataFile;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Benchmark da riga di comando che confronta le modalità di
+ * {@link ExcelDataReader} su workbook generati, più la lettura degli stessi
+ * dati da CSV: per ciascuna misura tempo di lettura, picco di heap e heap
+ * trattenuto dai dati letti.
+ * <p>
+ * Uso: ReaderBenchmark [righe] [fogli] [misure] [colonne]. Le misure, separate da
+ * virgola, sono WORKBOOK, STREAMING, CSV (tutte con la configurazione di
+ * default), NO_INTERN (streaming senza deduplicazione dei valori, da
+ * confrontare con STREAMING), COLUMNAR e ROWS (streaming con e senza
+ * memorizzazione per colonne, impostata esplicitamente) e DATES (foglio
+ * con più colonne di date, letto con e senza normalizzazione ISO-8601 e per
+ * colonne); per default vengono eseguite tutte. Ad esempio "500000 1
+ * STREAMING,NO_INTERN" misura il risparmio della deduplicazione su un
+ * foglio di valori ripetitivi. La verifica che i dati letti non trattengano
+ * il workbook è in ExcelDataReaderTest. Per
+ * misure di heap più affidabili conviene eseguirlo con un heap fisso (es.
+ * -Xms2g -Xmx2g). Le colonne (10 per default) permettono di misurare i
+ * fogli larghi, ad esempio "100000 1 STREAMING 60".
+ */
+public class ReaderBenchmark {
+
+    private static final int DEFAULT_COLUMNS = 10;
+    private static final int DATE_COLUMNS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int sheets = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        List<String> measures = Arrays.asList((args.length > 2 ? args[2] : "WORKBOOK,STREAMING,CSV,NO_INTERN,COLUMNAR,ROWS,DATES")
+                .toUpperCase().split(","));
+        int columns = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_COLUMNS;
+
+        File file = File.createTempFile("reader-benchmark", ".xlsx");
+        file.deleteOnExit();
+        generateWorkbook(file, sheets, rows, columns);
+        System.out.println("Workbook generato: " + file + " (" + sheets + " fogli x " + rows + " righe x " + columns + " colonne, "
+                + (file.length() / 1024) + " KB)");
+
+        File csvDirectory = Files.createTempDirectory("reader-benchmark-csv").toFile();
+        generateCsv(csvDirectory, sheets, rows, columns);
+
+        for (ExcelDataReader.Mode mode : ExcelDataReader.Mode.values()) {
+            if (measures.contains(mode.name())) {
+                measure(mode.name(), new ExcelDataReader(mode), file.getPath());
+            }
+        }
+        if (measures.contains("NO_INTERN")) {
+            ExcelDataReader reader = new ExcelDataReader(ExcelDataReader.Mode.STREAMING);
+            reader.setInternLimit(0);
+            measure("NO_INTERN", reader, file.getPath());
+        }
+        if (measures.contains("COLUMNAR")) {
+            measure("COLUMNAR", streaming(true), file.getPath());
+        }
+        if (measures.contains("ROWS")) {
+            measure("ROWS", streaming(false), file.getPath());
+        }
+        if (measures.contains("CSV")) {
+            measure("CSV", new ExcelDataReader(), csvDirectory.getPath());
+        }
+        if (measures.contains("DATES")) {
+            measureDates(rows);
+        }
+
+        for (File csv : csvDirectory.listFiles()) {
+            csv.delete();
+        }
+        csvDirectory.delete();
+    }
+
+    // Lettura in streaming con la memorizzazione indicata, indipendente dal default
+    private static ExcelDataReader streaming(boolean columnar) {
+        ExcelDataReader reader = new ExcelDataReader(ExcelDataReader.Mode.STREAMING);
+        reader.setColumnar(columnar);
+        return reader;
+    }
+
+    /**
+     * Misure su un foglio con colonne di date e di date con orario: la
+     * normalizzazione in ISO-8601 (default) contro il formato della cella,
+     * entrambe su righe, e la memorizzazione per colonne che conserva le
+     * date come numeri.
+     */
+    private static void measureDates(int rows) throws IOException {
+        File file = File.createTempFile("reader-benchmark-dates", ".xlsx");
+        file.deleteOnExit();
+        generateDateWorkbook(file, rows, DATE_COLUMNS);
+        System.out.println("Workbook di date generato: " + file + " (" + rows + " righe x " + (DATE_COLUMNS + 1) + " colonne, "
+                + (file.length() / 1024) + " KB)");
+
+        measure("ISO_DATES", streaming(false), file.getPath());
+        ExcelDataReader formatted = streaming(false);
+        formatted.setIsoDates(false);
+        measure("NO_ISO", formatted, file.getPath());
+        measure("DATES_COL", streaming(true), file.getPath());
+        ExcelDataReader workbook = new ExcelDataReader(ExcelDataReader.Mode.WORKBOOK);
+        measure("DATES_WB", workbook, file.getPath());
+    }
+
+    private static void measure(String label, ExcelDataReader reader, String path) throws IOException {
+        // Riscaldamento del JIT, escluso dalla misura
+        reader.readExcelFile(path).close();
+
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long gcStartMs = gcTime();
+        long start = System.nanoTime();
+        DataFile data = reader.readExcelFile(path);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        long gcMs = gcTime() - gcStartMs;
+        long peakBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        // Heap ancora occupato dopo la raccolta, con i dati letti raggiungibili
+        System.gc();
+        long retainedBytes = usedHeap();
+        System.out.println(String.format("%-10s tempo: %6d ms   GC: %5d ms   picco heap: %6d MB   heap trattenuto: %6d MB   righe: %d",
+                label, elapsedMs, gcMs, peakBytes / (1024 * 1024), retainedBytes / (1024 * 1024),
+                data.getDataSheets().stream().mapToInt(s -> s.getDataRows().size()).sum()));
+        data.close();
+    }
+
+    // Tempo complessivo speso dai garbage collector dall'avvio
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(gc.getCollectionTime(), 0);
+        }
+        return time;
+    }
+
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Genera un workbook con colonne di testo ripetitivo, interi, decimali,
+     * date e riferimenti, simile ai fogli importati abitualmente. Le colonne
+     * oltre la sesta alternano misure intere, misure decimali e testo.
+     */
+    static void generateWorkbook(File file, int sheets, int rows) throws IOException {
+        generateWorkbook(file, sheets, rows, DEFAULT_COLUMNS);
+    }
+
+    /**
+     * Come {@link #generateWorkbook(File, int, int)}, con il numero di
+     * colonne indicato (almeno 6).
+     */
+    static void generateWorkbook(File file, int sheets, int rows, int columns) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd/mm/yyyy"));
+            Calendar calendar = new GregorianCalendar(2020, Calendar.JANUARY, 1);
+            for (int s = 0; s < sheets; s++) {
+                Sheet sheet = workbook.createSheet("Classe_" + s);
+                Row header = sheet.createRow(0);
+                header.createCell(0).setCellValue("codice");
+                header.createCell(1).setCellValue("§descrizione");
+                header.createCell(2).setCellValue("eta");
+                header.createCell(3).setCellValue("§peso");
+                header.createCell(4).setCellValue("data_visita");
+                header.createCell(5).setCellValue("*Centro.nome");
+                for (int c = 6; c < columns; c++) {
+                    header.createCell(c).setCellValue("campo_" + c);
+                }
+                for (int r = 1; r <= rows; r++) {
+                    Row row = sheet.createRow(r);
+                    row.createCell(0).setCellValue("COD" + r);
+                    row.createCell(1).setCellValue("Descrizione di esempio " + (r % 500));
+                    row.createCell(2).setCellValue(r % 90);
+                    row.createCell(3).setCellValue(50 + (r % 400) / 10.0);
+                    Cell dateCell = row.createCell(4);
+                    dateCell.setCellValue(calendar.getTime());
+                    dateCell.setCellStyle(dateStyle);
+                    row.createCell(5).setCellValue("Centro " + (r % 40));
+                    for (int c = 6; c < columns; c++) {
+                        if (c % 3 == 2) {
+                            row.createCell(c).setCellValue("valore " + (r % 1000));
+                        } else {
+                            row.createCell(c).setCellValue(Double.parseDouble(extraValue(r, c)));
+                        }
+                    }
+                }
+            }
+            try (OutputStream os = new FileOutputStream(file)) {
+                workbook.write(os);
+            }
+            workbook.dispose();
+        }
+    }
+
+    /**
+     * Genera un foglio con un codice e colonne di date in formati diversi,
+     * una delle quali con orario, con date che cambiano a ogni riga.
+     */
+    static void generateDateWorkbook(File file, int rows, int dateColumns) throws IOException {
+        String[] formats = {"dd/mm/yyyy", "yyyy-mm-dd", "d-mmm-yy", "dd/mm/yyyy hh:mm"};
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000)) {
+            CellStyle[] styles = new CellStyle[formats.length];
+            for (int i = 0; i < formats.length; i++) {
+                styles[i] = workbook.createCellStyle();
+                styles[i].setDataFormat(workbook.createDataFormat().getFormat(formats[i]));
+            }
+            Sheet sheet = workbook.createSheet("Visite");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("codice");
+            for (int c = 1; c <= dateColumns; c++) {
+                header.createCell(c).setCellValue("data_" + c);
+            }
+            for (int r = 1; r <= rows; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue("COD" + r);
+                for (int c = 1; c <= dateColumns; c++) {
+                    int style = (c - 1) % formats.length;
+                    // Giorni dal 1900 tra il 1990 e il 2045 circa, con orario solo nell'ultimo formato
+                    double value = 32_874 + (r * 37L + c * 1_009L) % 20_000;
+                    if (style == formats.length - 1) {
+                        value += (r % 96) / 96.0;
+                    }
+                    Cell cell = row.createCell(c);
+                    cell.setCellValue(value);
+                    cell.setCellStyle(styles[style]);
+                }
+            }
+            try (OutputStream os = new FileOutputStream(file)) {
+                workbook.write(os);
+            }
+            workbook.dispose();
+        }
+    }
+
+    /**
+     * Genera gli stessi dati di {@link #generateWorkbook} come cartella di
+     * file CSV, uno per foglio.
+     */
+    static void generateCsv(File directory, int sheets, int rows, int columns) throws IOException {
+        for (int s = 0; s < sheets; s++) {
+            File file = new File(directory, "Classe_" + s + ".csv");
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                writer.write("codice,§descrizione,eta,§peso,data_visita,*Centro.nome");
+                for (int c = 6; c < columns; c++) {
+                    writer.write(",campo_" + c);
+                }
+                writer.write("\n");
+                for (int r = 1; r <= rows; r++) {
+                    writer.write("COD" + r + ",Descrizione di esempio " + (r % 500) + "," + (r % 90) + ","
+                            + (50 + (r % 400) / 10.0) + ",01/01/2020,Centro " + (r % 40));
+                    for (int c = 6; c < columns; c++) {
+                        writer.write("," + (c % 3 == 2 ? "valore " + (r % 1000) : extraValue(r, c)));
+                    }
+                    writer.write("\n");
+                }
+            }
+        }
+    }
+
+    // Misura numerica poco ripetitiva, come nei fogli clinici: intera o con due decimali
+    private static String extraValue(int row, int column) {
+        long seed = (row * 7919L + column * 104_729L) % 1_000_000;
+        if (column % 3 == 0) {
+            return Long.toString(seed);
+        }
+        return new BigDecimal(seed * 10 + 5).movePointLeft(2).toPlainString();
+    }
+}
@@ -0,0 +1,170 @@
+package graphql.model;
+
+import graphql.util.JsonUtils;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Benchmark da riga di comando del costo per cella di
+ * {@link DataCell#getFormattedValue()}: confronta la serializzazione
+ * precedente, ricalcolata a ogni chiamata, con quella attuale alla prima
+ * chiamata e alle successive, servite dal valore memorizzato. Misura poi
+ * gli stessi valori in un {@link ColumnarDataSheet}, dove le celle vengono
+ * ricostruite, e il valore ricalcolato, per le righe non più in uso.
+ * <p>
+ * Uso: FormattedValueBenchmark [celle] [ripetizioni]. Le celle sono un misto
+ * di interi, testi semplici, testi da sottoporre a escape e booleani, come
+ * in un foglio tipico; le colonne testuali sono lette due volte per
+ * simulare i due passaggi dei parser. Nel foglio a colonne il primo
+ * passaggio scandisce le colonne, come la risoluzione dei riferimenti, e il
+ * secondo le righe, come la generazione delle mutation.
+ */
+public class FormattedValueBenchmark {
+
+    private static final int COLUMNS = 5;
+
+    public static void main(String[] args) {
+        int cells = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        long checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            // Le celle vengono ricreate a ogni giro: la prima chiamata non trova valori memorizzati
+            List<DataCell> data = generateCells(cells);
+            long start = System.nanoTime();
+            for (DataCell cell : data) {
+                checksum += legacyFormattedValue(cell).length();
+                checksum += legacyFormattedValue(cell).length();
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (DataCell cell : data) {
+                checksum += cell.getFormattedValue().length();
+            }
+            long first = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (DataCell cell : data) {
+                checksum += cell.getFormattedValue().length();
+            }
+            long repeated = System.nanoTime() - start;
+
+            data = null;
+            ColumnarDataSheet sheet = generateSheet(cells / COLUMNS);
+            start = System.nanoTime();
+            for (Header header : sheet.getHeaders()) {
+                for (DataCell cell : sheet.cells(header)) {
+                    checksum += cell.getFormattedValue().length();
+                }
+            }
+            long columnScan = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (DataRow row : sheet.getDataRows()) {
+                for (DataCell cell : row.getDataCells()) {
+                    checksum += cell.getFormattedValue().length();
+                }
+            }
+            long rowScan = System.nanoTime() - start;
+
+            // I primi giri servono da riscaldamento del JIT
+            if (round >= rounds / 2) {
+                System.out.println(String.format("giro %2d   prima: %6.1f ns/cella (2 chiamate)   dopo: %6.1f ns/cella (1a chiamata) + %5.1f ns/cella (2a chiamata)"
+                        + "   colonne: %6.1f ns/cella (scansione colonne) + %5.1f ns/cella (righe)",
+                        round, legacy / (double) cells, first / (double) cells, repeated / (double) cells,
+                        columnScan / (double) cells, rowScan / (double) cells));
+            }
+        }
+        System.out.println("checksum: " + checksum);
+    }
+
+    /**
+     * Stesso misto di valori di {@link #generateCells(int)}, una colonna per
+     * tipo, in un foglio a colonne con i tipi dedotti come dal reader.
+     */
+    private static ColumnarDataSheet generateSheet(int rows) {
+        List<Header> headers = new ArrayList<>();
+        for (String name : new String[]{"piccolo", "numero", "descrizione", "§codice", "attivo"}) {
+            headers.add(new Header(name, headers.size()));
+        }
+        ColumnarDataSheet.Builder builder = new ColumnarDataSheet.Builder();
+        for (int row = 0; row < rows; row++) {
+            int i = row * COLUMNS;
+            addCell(builder, new DataCell(headers.get(0), CellType.NUMERIC, false, Integer.toString(i % 90)));
+            addCell(builder, new DataCell(headers.get(1), CellType.NUMERIC, false, Integer.toString(i + 1)));
+            addCell(builder, new DataCell(headers.get(2), CellType.STRING, false, "Descrizione di esempio " + ((i + 2) % 500)));
+            addCell(builder, new DataCell(headers.get(3), CellType.STRING, false, "Nome \"" + ((i + 3) % 40) + "\""));
+            addCell(builder, new DataCell(headers.get(4), CellType.BOOLEAN, false, (row & 1) == 0 ? "TRUE" : "FALSE"));
+            builder.endRow(row + 2);
+        }
+        return builder.build("Benchmark", headers);
+    }
+
+    private static void addCell(ColumnarDataSheet.Builder builder, DataCell cell) {
+        cell.getHeader().inferFieldType(cell);
+        builder.cell(cell.getHeader().getIndex(), cell);
+    }
+
+    private static List<DataCell> generateCells(int count) {
+        Header plain = new Header("campo");
+        Header forced = new Header("§codice");
+        List<DataCell> cells = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (i % 5) {
+                case 0:
+                    cells.add(new DataCell(plain, CellType.NUMERIC, false, Integer.toString(i % 90)));
+                    break;
+                case 1:
+                    cells.add(new DataCell(plain, CellType.NUMERIC, false, Integer.toString(i)));
+                    break;
+                case 2:
+                    cells.add(new DataCell(plain, CellType.STRING, false, "Descrizione di esempio " + (i % 500)));
+                    break;
+                case 3:
+                    cells.add(new DataCell(forced, CellType.STRING, false, "Nome \"" + (i % 40) + "\""));
+                    break;
+                default:
+                    cells.add(new DataCell(plain, CellType.BOOLEAN, false, (i & 1) == 0 ? "TRUE" : "FALSE"));
+                    break;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Serializzazione precedente, riportata per confronto: ogni chiamata
+     * analizza il numero con BigDecimal fino a tre volte e riesegue l'escape.
+     */
+    private static String legacyFormattedValue(DataCell cell) {
+        String formattedValue = cell.getValue();
+        if (legacyIsInteger(cell)) {
+            formattedValue = new BigDecimal(cell.getValue()).stripTrailingZeros().toPlainString();
+        }
+        if (cell.getHeader().isForcedQuotations() || (!legacyIsInteger(cell) && cell.getCellType() != CellType.BOOLEAN)) {
+            formattedValue = "\"" + legacyEscape(formattedValue) + "\"";
+        }
+        if (cell.isBlank()) {
+            formattedValue = "";
+        }
+        return formattedValue;
+    }
+
+    private static boolean legacyIsInteger(DataCell cell) {
+        if (!cell.getValue().isEmpty() && cell.getCellType() == CellType.NUMERIC && !cell.isDateFormatted()) {
+            BigDecimal bd = new BigDecimal(cell.getValue());
+            return bd.setScale(0).compareTo(bd) == 0;
+        }
+        return false;
+    }
+
+    private static String legacyEscape(String text) {
+        return text.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+    }
+}
@@ -0,0 +1,113 @@
+package graphql.parser;
+
+import graphql.model.DataCell;
+import graphql.model.DataRow;
+import graphql.model.DataSheet;
+import graphql.model.Header;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Benchmark da riga di comando della costruzione degli attributi di una
+ * mutation per riga: confronta l'analisi delle intestazioni a ogni cella,
+ * come avveniva prima, con lo schema del foglio compilato una volta sola.
+ * <p>
+ * Uso: RowThroughputBenchmark [righe] [colonne] [ripetizioni]. Il foglio
+ * generato ha un decimo delle colonne con riferimenti esterni e un decimo
+ * con virgolette forzate; per default 20000 righe da 100 colonne.
+ */
+public class RowThroughputBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        DataSheet sheet = generateSheet(rows, columns);
+        ExternalAttributeResolver resolver = new ExternalAttributeResolver() {
+        };
+        for (Header header : sheet.externalHeaders()) {
+            Map<String, String> value2id = new LinkedHashMap<>();
+            for (int i = 0; i < 40; i++) {
+                value2id.put("Valore " + i, Integer.toString(1000 + i));
+            }
+            resolver.header2value2id.put(header, value2id);
+        }
+
+        long checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (DataRow row : sheet.getDataRows()) {
+                checksum += legacyAttributes(resolver, row).size();
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (DataRow row : sheet.getDataRows()) {
+                checksum += resolver.buildMainAttributes(sheet, row).size();
+            }
+            long schema = System.nanoTime() - start;
+
+            // I primi giri servono da riscaldamento del JIT
+            if (round >= rounds / 2) {
+                System.out.println(String.format("giro %2d   intestazioni analizzate per cella: %8.0f righe/s   schema compilato: %8.0f righe/s",
+                        round, rows / (legacy / 1e9), rows / (schema / 1e9)));
+            }
+        }
+        System.out.println("checksum: " + checksum);
+    }
+
+    /**
+     * Costruzione precedente degli attributi, riportata per confronto: nomi
+     * e riferimenti vengono ricavati dalle intestazioni per ogni cella.
+     */
+    private static Map<String, String> legacyAttributes(ExternalAttributeResolver resolver, DataRow row) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (DataCell dataCell : row.getDataCells()) {
+            if (dataCell.isBlank()) {
+                continue;
+            }
+            if (dataCell.getHeader().isReference()) {
+                String resolvedId = resolver.getResolvedId(dataCell);
+                if (resolvedId != null) {
+                    attributes.put(dataCell.getHeader().getAttributeName(), resolvedId);
+                }
+            } else {
+                attributes.put(dataCell.getHeader().getAttributeName(), dataCell.getFormattedValue());
+            }
+        }
+        return attributes;
+    }
+
+    private static DataSheet generateSheet(int rows, int columns) {
+        List<Header> headers = new ArrayList<>(columns);
+        for (int c = 0; c < columns; c++) {
+            if (c % 10 == 5) {
+                headers.add(new Header("*Classe" + c + "[ruolo_" + c + "].nome", c));
+            } else if (c % 10 == 7) {
+                headers.add(new Header("§codice_" + c, c));
+            } else {
+                headers.add(new Header("campo_" + c, c));
+            }
+        }
+        List<DataRow> dataRows = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            List<DataCell> cells = new ArrayList<>(columns);
+            for (int c = 0; c < columns; c++) {
+                Header header = headers.get(c);
+                if (header.isReference()) {
+                    cells.add(new DataCell(header, CellType.STRING, false, "Valore " + (r % 40)));
+                } else if (c % 2 == 0) {
+                    cells.add(new DataCell(header, CellType.NUMERIC, false, Integer.toString(r % 1000)));
+                } else {
+                    cells.add(new DataCell(header, CellType.STRING, false, "testo " + (r % 100)));
+                }
+            }
+            dataRows.add(new DataRow(cells, r + 2));
+        }
+        return new DataSheet("Benchmark", headers, dataRows);
+    }
+}
@@ -6,15 +6,25 @@ import graphql.graphql.GraphQLQueryBuilder;
 import graphql.graphql.GraphQLService;
 import graphql.model.DataFile;
 import graphql.model.DataSheet;
+import graphql.model.Header;
+import graphql.model.SheetDependencies;
+import graphql.model.SheetMetadata;
 import graphql.parser.CompositionParser;
+import graphql.parser.ImportContext;
 import graphql.parser.MainParser;
 import graphql.parser.MutationParser;
+import graphql.parser.QueuedMutationSink;
+import graphql.util.Concurrency;
 import graphql.util.LoggerUI;
+import graphql.util.Settings;
 import graphql.util.SslBypass;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 import javax.swing.SwingUtilities;
 
 /**
@@ -22,6 +32,9 @@ import javax.swing.SwingUtilities;
  * la generazione ed esecuzione delle mutation verso i due endpoint GraphQL.
  */
 public class Application {
+
+    private static final int DEFAULT_IMPORT_THREADS = 4;
+    private static final int DEFAULT_IMPORT_QUEUE = 1000;
 
     private final ExcelDataReader excelDataReader;
     private final GraphQLMutationBuilder mutationBuilder;
@@ -48,18 +61,24 @@ public class Application {
      * i dati presenti sul backend prima di eventuali reinserimenti.
      */
     public void delete() throws Exception {
-        DataFile fileData = excelDataReader.readExcelFile(excelFilePath);
-
-        for (DataSheet sheetData : fileData.getDataSheets()) {
-            LoggerUI.log("\n--- Processing Sheet: " + sheetData.getName() + " ---");
-            MutationParser parser = getParserForSheet(sheetData);
-            List<String> mutations = parser.parseAndGenerateMutations(sheetData, mutationBuilder, queryBuilder, graphQLService);
+        ImportContext context = new ImportContext();
+        try (DataFile fileData = excelDataReader.readExcelFile(excelFilePath)) {
+            for (DataSheet sheetData : fileData.getDataSheets()) {
+                LoggerUI.log("\n--- Processing Sheet: " + sheetData.getName() + " ---");
+                if (!sheetData.isComposition()) {
+                    context.getReferenceCache().invalidate(graphQLService.primaryEndpoint, sheetData.getName());
+                }
+                MutationParser parser = getParserForSheet(sheetData, context);
+                List<String> mutations = parser.parseAndGenerateMutations(sheetData, mutationBuilder, queryBuilder, graphQLService);
 
-            LoggerUI.log("Generated Mutations for sheet '" + sheetData.getName() + "':");
-            for (String mutation : mutations) {
-                LoggerUI.log(mutation + "\n");
-                graphQLService.executeQueryWithFallback(mutation);
+                LoggerUI.log("Generated Mutations for sheet '" + sheetData.getName() + "':");
+                for (String mutation : mutations) {
+                    LoggerUI.log(mutation + "\n");
+                    graphQLService.executeQueryWithFallback(mutation);
+                }
             }
+        } finally {
+            context.log();
         }
     }
 
@@ -73,44 +92,177 @@ public class Application {
 
     /**
      * Flusso principale di importazione: legge il file Excel, sceglie il parser
-     * corretto per ogni foglio e invia le mutation generate, gestendo
-     * eventualmente l'ordine inverso per le eliminazioni.
+     * corretto per ogni foglio e invia le mutation generate. L'ordine segue
+     * le dipendenze tra i fogli invece della loro posizione nel file: i fogli
+     * indipendenti vengono importati insieme, fino a
+     * {@link Settings#IMPORT_THREADS} alla volta, e le eliminazioni seguono le
+     * dipendenze al contrario.
      */
     public void processExcelAndGenerateGraphQL(boolean delete) throws Exception {
-        DataFile fileData = excelDataReader.readExcelFile(excelFilePath);
+        // Verifica preliminare sui soli metadati: nessuna mutation parte se un foglio non è valido
+        List<SheetMetadata> sheets = excelDataReader.scanExcelFile(excelFilePath);
+        validateSheets(sheets, delete);
+        SheetDependencies dependencies = new SheetDependencies(sheets);
+        int parallelism = Settings.getInt(Settings.IMPORT_THREADS, DEFAULT_IMPORT_THREADS);
+        logPlan(sheets, dependencies, parallelism, delete);
+        // Errori delle righe e ID dei riferimenti condivisi da tutti i fogli
+        ImportContext context = new ImportContext();
+        context.invalidateConfigured(graphQLService.primaryEndpoint);
+        if (delete) {
+            deleteSheets(sheets, dependencies, parallelism, context);
+            return;
+        }
+        for (SheetMetadata sheet : sheets) {
+            for (Header header : sheet.externalHeaders()) {
+                context.getReferenceCache().addReferencedAttribute(header.getReferencedClassName(), header.getReferencedAttributeName());
+            }
+        }
+        // Con la lettura in streaming il file resta aperto finché i fogli non sono stati elaborati
+        try (DataFile fileData = excelDataReader.readExcelFile(excelFilePath)) {
+            List<DataSheet> dataSheets = fileData.getDataSheets();
+            List<Set<Integer>> prerequisites = dependencies.forImport();
+            if (!sameSheets(sheets, dataSheets)) {
+                // Fogli diversi da quelli analizzati: si torna all'ordine del file
+                prerequisites = sequential(dataSheets.size());
+            }
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (DataSheet sheetData : dataSheets) {
+                tasks.add(() -> {
+                    importSheet(sheetData, context);
+                    return null;
+                });
+            }
+            Concurrency.invokeGraph("graphql-import", tasks, prerequisites, parallelism);
+        } finally {
+            queryBuilder.logSummary();
+            context.log();
+        }
+    }
+
+    /**
+     * Importa un foglio: le mutation generate dal parser, dopo la risoluzione
+     * dei riferimenti esterni, passano da una coda limitata a un thread che le
+     * invia una alla volta, così generazione e invio procedono insieme e il
+     * foglio non viene mai tenuto in memoria come lista di mutation. La
+     * risposta di ogni creazione fornisce l'ID ai fogli che la referenziano.
+     */
+    private void importSheet(DataSheet sheetData, ImportContext context) throws Exception {
+        LoggerUI.log("\n--- Processing Sheet: " + sheetData.getName() + " ---");
+        MutationParser parser = getParserForSheet(sheetData, context);
+        LoggerUI.log("Generated Mutations for sheet '" + sheetData.getName() + "':");
+        int capacity = Settings.getInt(Settings.IMPORT_QUEUE, DEFAULT_IMPORT_QUEUE);
+        try (QueuedMutationSink sink = new QueuedMutationSink(graphQLService, sheetData.getName(), capacity)) {
+            parser.parseAndEmitMutations(sheetData, mutationBuilder, queryBuilder, graphQLService, sink);
+        }
+    }
+
+    /**
+     * Indica se i fogli letti sono quelli analizzati, nello stesso ordine.
+     */
+    private static boolean sameSheets(List<SheetMetadata> sheets, List<DataSheet> dataSheets) {
+        if (sheets.size() != dataSheets.size()) {
+            return false;
+        }
+        for (int i = 0; i < sheets.size(); i++) {
+            if (!sheets.get(i).getName().equals(dataSheets.get(i).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Ogni foglio dipende dal precedente
+    private static List<Set<Integer>> sequential(int size) {
+        List<Set<Integer>> prerequisites = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            prerequisites.add(i == 0 ? Collections.emptySet() : Collections.singleton(i - 1));
+        }
+        return prerequisites;
+    }
+
+    /**
+     * Cancellazione bulk delle tabelle dei fogli seguendo le dipendenze al
+     * contrario, così da rimuovere prima le tabelle che referenziano le
+     * altre; le tabelle indipendenti vengono cancellate insieme. Bastano i
+     * nomi dei fogli, quindi i dati non vengono letti. Gli ID delle tabelle
+     * cancellate vengono rimossi dalla cache dei riferimenti.
+     */
+    private void deleteSheets(List<SheetMetadata> sheets, SheetDependencies dependencies, int parallelism, ImportContext context) throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (SheetMetadata sheet : sheets) {
+            tasks.add(() -> {
+                if (!sheet.isComposition()) {
+                    LoggerUI.log("\n--- Processing Sheet: " + sheet.getName() + " ---");
+                    LoggerUI.log("Generated Mutations for sheet '" + sheet.getName() + "':");
+                    context.getReferenceCache().invalidate(graphQLService.primaryEndpoint, sheet.getName());
+                    graphQLService.executeQueryWithFallback(buildGraphQLDelete(sheet.getName()));
+                }
+                return null;
+            });
+        }
+        Concurrency.invokeGraph("graphql-delete", tasks, dependencies.forDelete(), parallelism);
+    }
 
-        // Eventuale inversione per cancellazioni, così da rimuovere prima le composizioni
+    /**
+     * Controlla le intestazioni di tutti i fogli prima di inviare qualsiasi
+     * mutation, riportando insieme tutti i problemi trovati.
+     */
+    private static void validateSheets(List<SheetMetadata> sheets, boolean delete) {
         if (delete) {
-            Collections.reverse(fileData.getDataSheets());
+            return;
         }
-        for (DataSheet sheetData : fileData.getDataSheets()) {
-            if (delete && sheetData.isComposition()) {
-                continue;
-            }
-            LoggerUI.log("\n--- Processing Sheet: " + sheetData.getName() + " ---");
-            MutationParser parser = getParserForSheet(sheetData);
-            List<String> mutations;
-            if (delete) {
-                mutations = Arrays.asList(buildGraphQLDelete(sheetData.getName()));
-            } else {
-                mutations = parser.parseAndGenerateMutations(sheetData, mutationBuilder, queryBuilder, graphQLService);
+        List<String> errors = new ArrayList<>();
+        for (SheetMetadata sheet : sheets) {
+            if (sheet.isComposition()) {
+                if (sheet.getHeaders().isEmpty()) {
+                    errors.add("Il foglio di composizione '" + sheet.getName() + "' deve avere delle intestazioni.");
+                } else if (sheet.externalHeaders().isEmpty()) {
+                    errors.add("La composizione '" + sheet.getName() + "' deve contenere un riferimento al whole (es. '*Parent.attribute').");
+                }
             }
+            for (Header header : sheet.externalHeaders()) {
+                String[] parts = header.getValue().split("\\.");
+                if (parts.length != 2 || parts[0].trim().isEmpty() || parts[1].trim().isEmpty()) {
+                    errors.add("Foglio '" + sheet.getName() + "': il riferimento '" + header.getValue() + "' non è nella forma Classe.attributo");
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            errors.forEach(LoggerUI::log);
+            throw new IllegalArgumentException("Il file contiene " + errors.size() + " errori nelle intestazioni: nessuna mutation è stata inviata");
+        }
+    }
 
-            LoggerUI.log("Generated Mutations for sheet '" + sheetData.getName() + "':");
-            for (String mutation : mutations) {
-                graphQLService.executeQueryWithFallback(mutation);
+    /**
+     * Riporta i fogli che verranno elaborati, con il numero di righe stimato
+     * e, per l'importazione, i fogli da cui dipendono.
+     */
+    private static void logPlan(List<SheetMetadata> sheets, SheetDependencies dependencies, int parallelism, boolean delete) {
+        LoggerUI.log((delete ? "Fogli da cancellare: " : "Fogli da importare: ") + sheets.size());
+        for (int i = 0; i < sheets.size(); i++) {
+            SheetMetadata sheet = sheets.get(i);
+            StringBuilder line = new StringBuilder("  ").append(sheet.getName());
+            if (sheet.getRowCount() >= 0) {
+                line.append(" (").append(sheet.getRowCount()).append(" righe)");
+            }
+            if (!delete && !dependencies.prerequisites(i).isEmpty()) {
+                line.append(" dopo ").append(dependencies.prerequisites(i).stream()
+                        .map(p -> sheets.get(p).getName()).collect(Collectors.joining(", ")));
             }
+            LoggerUI.log(line);
         }
+        dependencies.getBrokenCycles().forEach(cycle -> LoggerUI.log("Dipendenza circolare tra i fogli: " + cycle));
+        LoggerUI.log("Fogli in parallelo: fino a " + parallelism + ", catena di dipendenze più lunga: " + dependencies.criticalPathLength() + " fogli");
     }
 
     /**
      * Seleziona il parser corretto in base al tipo di foglio (main o composizione).
      */
-    private MutationParser getParserForSheet(DataSheet sheet) {
+    private MutationParser getParserForSheet(DataSheet sheet, ImportContext context) {
         if (sheet.isComposition()) {
-            return new CompositionParser();
+            return new CompositionParser(context);
         } else {
-            return new MainParser();
+            return new MainParser(context);
         }
     }
 
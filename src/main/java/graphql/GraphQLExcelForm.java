@@ -86,14 +86,18 @@ public class GraphQLExcelForm extends JFrame {
             + "      di default (ossia il nome della classe con la prima lettera minuscola e underscore \n"
             + "      finale), il nome del ruolo va specificato all'interno di parentesi quadre immediatamente\n"
             + "      prima del carattere di separazione tra classe e nome campo (e.g. Patologia[patologia_epatica].nome)\n"
-            + "    - L'ordine dei fogli deve rispettare le dipendenze delle classi, quindi le\n"
-            + "      classi con dipendenze esterne vanno messe dopo\n"
+            + "    - L'ordine dei fogli non conta: ogni foglio viene importato dopo i fogli delle classi a cui\n"
+            + "      fa riferimento, e i fogli indipendenti vengono importati insieme. Con dipendenze circolari\n"
+            + "      vale l'ordine dei fogli. La cancellazione segue le dipendenze al contrario\n"
             + "    - Se il nome della classe eccede la lunghezza massima supportata da Excel per i nomi dei fogli, si può creare\n"
             + "      un foglio chiamato \"_mapping\" con due colonne: vecchio nome foglio, nuovo nome foglio. Il nome delle\n"
             + "      colonne non conta, basta che siano nell'ordine vecchio-nuovo, e che i valori contengano anche eventuali\n"
             + "      simboli per le composizioni, se il caso.\n"
             + "    - Se si vuole fare riferimento all'ID di un oggetto (come nel caso degli enum), il nome da usare è _id, con un\n"
             + "      solo undersocre (e.g. *Probe._id)\n"
+            + "    - In alternativa al file Excel si può indicare una cartella di file CSV/TSV (UTF-8), uno per foglio:\n"
+            + "      il nome del file senza estensione è il nome del foglio, i fogli seguono l'ordine alfabetico dei file\n"
+            + "      e valgono le stesse regole per intestazioni, composizioni e \"_mapping\" (e.g. _mapping.csv)\n"
             + "\n"
             + "- Classi main\n"
             + "    - Il nome del foglio è il nome della classe (case sensitive), senza alcun prefisso (e.g. Tipo_visita)\n"
@@ -307,7 +311,9 @@ public class GraphQLExcelForm extends JFrame {
         } else {
             chooser = new JFileChooser();
         }
-        chooser.setFileFilter(new FileNameExtensionFilter("Excel Files", "xls", "xlsx"));
+        // Oltre ai file Excel si può scegliere una cartella di file CSV, uno per foglio
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setFileFilter(new FileNameExtensionFilter("Excel/CSV Files", "xls", "xlsx", "csv", "tsv"));
         int ret = chooser.showOpenDialog(this);
         if (ret == JFileChooser.APPROVE_OPTION) {
             jtfExcelPath.setText(chooser.getSelectedFile().getAbsolutePath());
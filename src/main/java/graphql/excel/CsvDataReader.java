@@ -0,0 +1,233 @@
+package graphql.excel;
+
+import graphql.model.DataCell;
+import graphql.model.DataFile;
+import graphql.model.DataSheet;
+import graphql.model.SheetMetadata;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Reader per dati tabellari in formato CSV/TSV: una cartella contiene un file
+ * per foglio, il nome del file (senza estensione) è il nome del foglio e i
+ * fogli seguono l'ordine alfabetico dei file. Valgono le stesse convenzioni
+ * dei file Excel ('*', '§', '#', "_mapping").
+ * <p>
+ * I file vengono letti in streaming senza passare da POI; il tipo di ogni
+ * valore viene dedotto dal testo, dato che il CSV non ne conserva alcuno.
+ */
+class CsvDataReader {
+
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String TSV_EXTENSION = ".tsv";
+    // Caratteri dell'intestazione esaminati per scegliere il separatore
+    private static final int HEADER_SAMPLE = 8 * 1024;
+
+    // Numeri in forma canonica: gli zeri iniziali (es. codici "007") restano testo
+    private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?");
+
+    private final int parallelism;
+    private final int windowSize;
+    private final ValueInterner interner;
+    private final boolean columnar;
+
+    /**
+     * @param parallelism file letti contemporaneamente nella lettura completa
+     * @param windowSize se maggiore di zero, i fogli vengono restituiti in
+     * streaming con al più questo numero di righe lette in anticipo
+     * @param interner tabella dei valori condivisa dai fogli del file
+     * @param columnar se true i fogli letti completamente vengono memorizzati
+     * per colonne
+     */
+    CsvDataReader(int parallelism, int windowSize, ValueInterner interner, boolean columnar) {
+        this.parallelism = parallelism;
+        this.windowSize = windowSize;
+        this.interner = interner;
+        this.columnar = columnar;
+    }
+
+    /**
+     * Indica se il percorso è gestito da questo reader: una cartella oppure
+     * un singolo file .csv/.tsv.
+     */
+    static boolean accepts(File file) {
+        return file.isDirectory() || isCsvFile(file);
+    }
+
+    private static boolean isCsvFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        return file.isFile() && (name.endsWith(CSV_EXTENSION) || name.endsWith(TSV_EXTENSION));
+    }
+
+    /**
+     * Legge tutti i file CSV/TSV della cartella, oppure il singolo file
+     * indicato, come fogli di un unico {@link DataFile}.
+     */
+    DataFile read(File file) throws IOException {
+        File[] files = listFiles(file);
+        if (windowSize > 0) {
+            List<DataSheet> sheets = new ArrayList<>();
+            List<StreamingRowSource> sources = new ArrayList<>();
+            for (File csv : files) {
+                String sheetName = sheetName(csv);
+                StreamingRowSource source = new StreamingRowSource(sheetName, windowSize, interner, builder -> parseFile(csv, builder, Integer.MAX_VALUE));
+                sources.add(source);
+                sheets.add(new DataSheet(sheetName, source));
+            }
+            return new DataFile(sheets, () -> sources.forEach(StreamingRowSource::close));
+        }
+
+        List<Callable<DataSheet>> tasks = new ArrayList<>();
+        for (File csv : files) {
+            tasks.add(() -> {
+                SheetBuilder builder = new SheetBuilder(sheetName(csv), interner, columnar);
+                parseFile(csv, builder, Integer.MAX_VALUE);
+                return builder.build();
+            });
+        }
+        return new DataFile(ExcelDataReader.readSheets(tasks, parallelism));
+    }
+
+    /**
+     * Metadati dei file della cartella leggendo solo la riga di
+     * intestazione; il file "_mapping" viene letto per intero e applicato ai
+     * nomi. Il numero di righe non è noto senza leggere i file (-1).
+     */
+    List<SheetMetadata> scan(File file) throws IOException {
+        List<SheetMetadata> sheets = new ArrayList<>();
+        DataSheet mappingSheet = null;
+        for (File csv : listFiles(file)) {
+            SheetBuilder builder = new SheetBuilder(sheetName(csv), interner);
+            if (builder.getName().equalsIgnoreCase(DataFile.MAPPING_SHEET_NAME)) {
+                parseFile(csv, builder, Integer.MAX_VALUE);
+                mappingSheet = builder.build();
+            } else {
+                parseFile(csv, builder, 1);
+                sheets.add(new SheetMetadata(builder.getName(), builder.build().getHeaders(), -1));
+            }
+        }
+        if (mappingSheet != null) {
+            Map<String, String> oldName2newName = ExcelDataReader.sheetNameMapping(mappingSheet);
+            sheets.stream()
+                    .filter(s -> oldName2newName.containsKey(s.getName()))
+                    .forEach(s -> s.setName(oldName2newName.get(s.getName())));
+        }
+        return sheets;
+    }
+
+    private static File[] listFiles(File file) throws IOException {
+        File[] files = file.isDirectory() ? file.listFiles(CsvDataReader::isCsvFile) : new File[]{file};
+        if (files == null) {
+            throw new IOException("Impossibile leggere la cartella '" + file + "'");
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return files;
+    }
+
+    private static String sheetName(File file) {
+        String name = file.getName();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    /**
+     * Legge il file fino a un massimo di {@code rowLimit} righe, intestazione
+     * compresa.
+     */
+    private void parseFile(File file, SheetBuilder builder, int rowLimit) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                BOMInputStream.builder().setInputStream(new FileInputStream(file)).get(), StandardCharsets.UTF_8))) {
+            CSVFormat format = CSVFormat.DEFAULT.builder()
+                    .setDelimiter(delimiter(file, reader))
+                    .build();
+            try (CSVParser parser = format.parse(reader)) {
+                int rows = 0;
+                for (CSVRecord record : parser) {
+                    if (rows++ >= rowLimit) {
+                        break;
+                    }
+                    builder.startRow((int) record.getRecordNumber());
+                    if (builder.isHeaderRow()) {
+                        record.forEach(builder::headerCell);
+                    } else {
+                        for (int i = 0; i < record.size(); i++) {
+                            String value = record.get(i);
+                            // Come per le celle Excel mai compilate, i campi vuoti non producono celle
+                            if (!value.isEmpty()) {
+                                builder.dataCell(i, toDataCell(builder, i, value));
+                            }
+                        }
+                    }
+                    builder.endRow();
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea la cella deducendo il tipo dal testo: numeri in forma canonica e
+     * valori TRUE/FALSE si comportano come le corrispondenti celle Excel.
+     */
+    private static DataCell toDataCell(SheetBuilder builder, int column, String value) {
+        if ("TRUE".equalsIgnoreCase(value)) {
+            return new DataCell(builder.headerAt(column), CellType.BOOLEAN, false, "TRUE");
+        }
+        if ("FALSE".equalsIgnoreCase(value)) {
+            return new DataCell(builder.headerAt(column), CellType.BOOLEAN, false, "FALSE");
+        }
+        if (NUMBER.matcher(value).matches()) {
+            return new DataCell(builder.headerAt(column), CellType.NUMERIC, false, builder.value(value));
+        }
+        return new DataCell(builder.headerAt(column), CellType.STRING, false, builder.value(value));
+    }
+
+    /**
+     * Separatore di campo: tabulazione per i .tsv, altrimenti il più
+     * frequente tra ';', ',' e tabulazione nella riga di intestazione (Excel
+     * in lingua italiana esporta con ';'). Di intestazioni molto lunghe si
+     * esamina solo l'inizio.
+     */
+    private static char delimiter(File file, BufferedReader reader) throws IOException {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(TSV_EXTENSION)) {
+            return '\t';
+        }
+        char[] sample = new char[HEADER_SAMPLE];
+        reader.mark(sample.length);
+        int length = 0;
+        while (length < sample.length) {
+            int read = reader.read(sample, length, sample.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        reader.reset();
+        String firstLine = new String(sample, 0, length).split("[\r\n]", 2)[0];
+        char best = ',';
+        long bestCount = 0;
+        for (char candidate : new char[]{',', ';', '\t'}) {
+            long count = firstLine.chars().filter(c -> c == candidate).count();
+            if (count > bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+}
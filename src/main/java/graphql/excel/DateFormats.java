@@ -0,0 +1,106 @@
+package graphql.excel;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Riconoscimento delle celle data e loro normalizzazione in ISO-8601,
+ * condivisi dai fogli di uno stesso file (quindi di un unico workbook).
+ * <p>
+ * Stabilire se un formato è una data richiede l'analisi della stringa di
+ * formato: il risultato viene memorizzato per indice di stile del workbook,
+ * così ogni stile viene analizzato una sola volta.
+ */
+class DateFormats {
+
+    private static final DateTimeFormatter ISO_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final DateTimeFormatter ISO_TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final boolean isoDates;
+    private final Map<Integer, Boolean> styleIsDate = new ConcurrentHashMap<>();
+    private volatile boolean date1904 = false;
+
+    /**
+     * @param isoDates se true le date vengono scritte in ISO-8601 invece che
+     * con il formato della cella
+     */
+    DateFormats(boolean isoDates) {
+        this.isoDates = isoDates;
+    }
+
+    /**
+     * Indica se le date vanno normalizzate con {@link #toIso}.
+     */
+    boolean isIsoDates() {
+        return isoDates;
+    }
+
+    /**
+     * Imposta il sistema di date del workbook, letto dal reader prima dei
+     * fogli.
+     */
+    void setDate1904(boolean date1904) {
+        this.date1904 = date1904;
+    }
+
+    /**
+     * Indica se il workbook usa il sistema di date 1904.
+     */
+    boolean isDate1904() {
+        return date1904;
+    }
+
+    /**
+     * Indica se lo stile applica un formato data. Indice e stringa del
+     * formato vengono analizzati solo la prima volta che lo stile compare.
+     */
+    boolean isDateStyle(int styleIndex, int formatIndex, String formatString) {
+        Boolean date = styleIsDate.get(styleIndex);
+        if (date == null) {
+            date = formatString != null && DateUtil.isADateFormat(formatIndex, formatString);
+            styleIsDate.put(styleIndex, date);
+        }
+        return date;
+    }
+
+    /**
+     * Numero seriale Excel di una data ISO-8601, come riportata dalle celle
+     * di tipo "d": data ("2021-01-31"), data e ora ("2021-01-31T08:30:00",
+     * anche con frazioni di secondo o fuso orario, che viene ignorato) oppure
+     * solo ora ("08:30:00").
+     *
+     * @throws java.time.format.DateTimeParseException se il testo non è una
+     * data ISO-8601
+     */
+    double fromIso(String text) {
+        if (text.indexOf('T') >= 0) {
+            return DateUtil.getExcelDate(LocalDateTime.from(DateTimeFormatter.ISO_DATE_TIME.parse(text)), date1904);
+        }
+        if (text.indexOf(':') >= 0) {
+            return LocalTime.parse(text).toSecondOfDay() / (double) SECONDS_PER_DAY;
+        }
+        return DateUtil.getExcelDate(LocalDate.parse(text).atStartOfDay(), date1904);
+    }
+
+    /**
+     * Data in ISO-8601: solo la data se non c'è un orario ("2021-01-31"),
+     * data e ora altrimenti ("2021-01-31T08:30:00"), solo l'ora per i valori
+     * inferiori a un giorno ("08:30:00").
+     */
+    String toIso(double value) {
+        LocalDateTime dateTime = DateUtil.getLocalDateTime(value, date1904, true);
+        if (value < 1 && !date1904) {
+            return dateTime.format(ISO_TIME);
+        }
+        if (dateTime.toLocalTime().toSecondOfDay() == 0) {
+            return dateTime.toLocalDate().toString();
+        }
+        return dateTime.format(ISO_DATE_TIME);
+    }
+}
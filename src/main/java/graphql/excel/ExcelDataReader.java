@@ -2,23 +2,32 @@ package graphql.excel;
 
 import graphql.model.DataCell;
 import graphql.model.DataFile;
-import graphql.model.DataRow;
 import graphql.model.DataSheet;
-import graphql.model.Header;
-import java.io.FileInputStream;
+import graphql.model.SheetMetadata;
+import graphql.util.Concurrency;
+import graphql.util.LoggerUI;
+import graphql.util.Settings;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
@@ -27,72 +36,307 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  */
 public class ExcelDataReader {
 
-    private final DataFormatter dataFormatter = new DataFormatter();
+    /**
+     * Strategia di lettura dei file Excel; il formato (.xlsx o .xls) viene
+     * riconosciuto dal contenuto del file.
+     */
+    public enum Mode {
+        /**
+         * Carica l'intero workbook in memoria e rivaluta le formule.
+         */
+        WORKBOOK,
+        /**
+         * Decodifica i fogli in streaming (SAX per .xlsx, API a eventi HSSF
+         * per .xls) con occupazione di memoria costante per riga, usando i
+         * valori delle formule salvati nel file.
+         */
+        STREAMING
+    }
+
+    private final Mode mode;
+    private int parallelism = Settings.getInt(Settings.READER_THREADS, Runtime.getRuntime().availableProcessors());
+    private boolean useCachedFormulaValues = Settings.getBoolean(Settings.READER_CACHED_FORMULAS, false);
+    private boolean lazy = Settings.getBoolean(Settings.READER_LAZY, false);
+    private int windowSize = Settings.getInt(Settings.READER_WINDOW, 1000);
+    private boolean columnar = Settings.getBoolean(Settings.READER_COLUMNAR, true);
+    private int internLimit = Settings.getInt(Settings.READER_INTERN_LIMIT, ValueInterner.DEFAULT_MAX_SIZE);
+    private boolean isoDates = Settings.getBoolean(Settings.READER_ISO_DATES, true);
+
+    /**
+     * Crea il reader con la modalità configurata in {@link Settings#READER_MODE}.
+     */
+    public ExcelDataReader() {
+        this(Mode.valueOf(Settings.get(Settings.READER_MODE, Mode.STREAMING.name()).toUpperCase()));
+    }
+
+    /**
+     * Crea il reader con la modalità indicata.
+     */
+    public ExcelDataReader(Mode mode) {
+        this.mode = Objects.requireNonNull(mode, "mode");
+    }
+
+    /**
+     * Modalità di lettura in uso.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Imposta il numero massimo di fogli elaborati contemporaneamente nella
+     * lettura in streaming; non ha effetto sul workbook completo.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * In modalità {@link Mode#WORKBOOK}, usa per le formule il risultato
+     * memorizzato da Excel nel file invece di rivalutarle. La modalità
+     * {@link Mode#STREAMING} usa sempre i valori memorizzati.
+     */
+    public void setUseCachedFormulaValues(boolean useCachedFormulaValues) {
+        this.useCachedFormulaValues = useCachedFormulaValues;
+    }
+
+    /**
+     * In modalità {@link Mode#STREAMING} e per i CSV, restituisce fogli le cui righe
+     * vengono decodificate su richiesta durante il consumo, tenendo in
+     * memoria al più {@code windowSize} righe per foglio. Il {@link DataFile}
+     * ottenuto va chiuso al termine dell'elaborazione.
+     */
+    public void setLazy(boolean lazy, int windowSize) {
+        this.lazy = lazy;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Se true, i fogli letti completamente vengono memorizzati per colonne
+     * ({@link graphql.model.ColumnarDataSheet}) invece che come oggetti riga.
+     */
+    public void setColumnar(boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    /**
+     * Imposta il numero massimo di valori distinti condivisi tra le celle di
+     * un file; 0 disattiva la deduplicazione.
+     */
+    public void setInternLimit(int internLimit) {
+        this.internLimit = internLimit;
+    }
+
+    /**
+     * Se true, le celle con formato data vengono scritte in ISO-8601 invece
+     * che con il formato applicato nel foglio. Non riguarda i CSV, dove le
+     * date sono semplice testo.
+     */
+    public void setIsoDates(boolean isoDates) {
+        this.isoDates = isoDates;
+    }
 
     /**
      * Carica il file Excel e converte ogni foglio in un {@link DataSheet}.
+     * Se il percorso è una cartella (o un singolo file .csv/.tsv) i fogli
+     * vengono letti dai file CSV che contiene.
      */
     public DataFile readExcelFile(String filePath) throws IOException {
-        try (InputStream fis = new FileInputStream(filePath); Workbook workbook = new XSSFWorkbook(fis)) {
-            FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+        File file = new File(filePath);
+        // Una tabella per file: i valori ripetuti tra fogli diversi sono condivisi
+        ValueInterner interner = new ValueInterner(internLimit);
+        DateFormats dateFormats = new DateFormats(isoDates);
+        DataFile data;
+        if (CsvDataReader.accepts(file)) {
+            data = new CsvDataReader(parallelism, lazy ? windowSize : 0, interner, columnar).read(file);
+        } else if (mode == Mode.STREAMING && FileMagic.valueOf(file) == FileMagic.OLE2) {
+            data = new XlsEventReader(interner, columnar, dateFormats).read(file);
+        } else if (mode == Mode.STREAMING) {
+            data = new XlsxStreamingReader(parallelism, lazy ? windowSize : 0, interner, columnar, dateFormats).read(file);
+        } else {
+            data = readWorkbook(filePath, interner, dateFormats);
+        }
+        try {
+            fixMappingSheet(data);
+        } catch (RuntimeException e) {
+            data.close();
+            throw e;
+        }
+        return data;
+    }
+
+    /**
+     * Legge solo nome, intestazioni e numero di righe dei fogli, senza
+     * decodificarne i dati: i nomi sono già modificati secondo "_mapping",
+     * che non compare tra i fogli restituiti. Per i file .xlsx il numero di
+     * righe è quello dichiarato nel file; per i CSV non è disponibile.
+     */
+    public List<SheetMetadata> scanExcelFile(String filePath) throws IOException {
+        File file = new File(filePath);
+        if (CsvDataReader.accepts(file)) {
+            return new CsvDataReader(parallelism, 0, new ValueInterner(0), false).scan(file);
+        }
+        if (FileMagic.valueOf(file) == FileMagic.OOXML) {
+            return new XlsxMetadataScanner().scan(file);
+        }
+        // Formati senza lettura parziale: metadati ricavati dalla lettura completa
+        try (DataFile data = readExcelFile(filePath)) {
+            List<SheetMetadata> sheets = new ArrayList<>();
+            for (DataSheet sheet : data.getDataSheets()) {
+                sheets.add(new SheetMetadata(sheet.getName(), sheet.getHeaders(), sheet.getDataRows().size()));
+            }
+            return sheets;
+        }
+    }
+
+    /**
+     * Lettura tramite il modello completo del workbook (XSSF o HSSF secondo
+     * il formato del file). POI non supporta l'accesso concorrente a uno
+     * stesso workbook, neanche su fogli diversi: stili, shared strings e
+     * valutazione delle formule (anche tra fogli) sono condivisi, quindi i
+     * fogli vengono convertiti uno alla volta, con un unico valutatore.
+     */
+    private DataFile readWorkbook(String filePath, ValueInterner interner, DateFormats dateFormats) throws IOException {
+        try (Workbook workbook = openWorkbook(new File(filePath))) {
+            dateFormats.setDate1904(isDate1904(workbook));
+            FormulaEvaluator evaluator = useCachedFormulaValues ? null : workbook.getCreationHelper().createFormulaEvaluator();
             List<DataSheet> sheets = new ArrayList<>();
             for (Sheet sheet : workbook) {
-                sheets.add(parseSheet(sheet, evaluator));
+                sheets.add(new SheetReader(evaluator, interner, dateFormats).parse(sheet));
             }
-            DataFile data = new DataFile(sheets);
-            fixMappingSheet(data);
-            return data;
+            return new DataFile(sheets);
+        }
+    }
+
+    /**
+     * Apre il workbook in sola lettura; ridefinibile nei test per osservarne
+     * il ciclo di vita.
+     */
+    Workbook openWorkbook(File file) throws IOException {
+        return WorkbookFactory.create(file, null, true);
+    }
+
+    /**
+     * Esegue le attività di lettura dei fogli sul pool limitato, riportando
+     * gli errori come {@link IOException}.
+     */
+    static List<DataSheet> readSheets(List<Callable<DataSheet>> tasks, int parallelism) throws IOException {
+        try {
+            return Concurrency.invokeAll("excel-reader", tasks, parallelism);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Errore durante la lettura dei fogli: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isDate1904(Workbook workbook) {
+        if (workbook instanceof XSSFWorkbook) {
+            return ((XSSFWorkbook) workbook).isDate1904();
         }
+        return workbook instanceof HSSFWorkbook && ((HSSFWorkbook) workbook).getInternalWorkbook().isUsing1904DateWindowing();
     }
 
     /**
-     * Converte un singolo foglio in intestazioni e righe di dati già
-     * formattati.
+     * Stato di lettura di un singolo foglio: il DataFormatter e i contatori
+     * delle formule per il report finale. Il FormulaEvaluator (null se si usano
+     * i valori in cache) è quello condiviso del workbook.
      */
-    private DataSheet parseSheet(Sheet sheet, FormulaEvaluator evaluator) {
-        List<Header> headers = new ArrayList<>();
-        Iterator<Row> rowIterator = sheet.iterator();
+    private class SheetReader {
+
+        private final DataFormatter dataFormatter = new DataFormatter();
+        private final FormulaEvaluator evaluator;
+        private final ValueInterner interner;
+        private final DateFormats dateFormats;
+        private int formulaCells = 0;
+        private long evaluationNanos = 0;
 
-        if (rowIterator.hasNext()) {
-            Row headerRow = rowIterator.next();
-            headerRow.forEach(cell -> headers.add(new Header(readCellAsString(cell, evaluator))));
+        SheetReader(FormulaEvaluator evaluator, ValueInterner interner, DateFormats dateFormats) {
+            this.evaluator = evaluator;
+            this.interner = interner;
+            this.dateFormats = dateFormats;
+            dataFormatter.setUseCachedValuesForFormulaCells(evaluator == null);
         }
 
-        List<DataRow> dataRows = new ArrayList<>();
-        while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
-            if (row != null) {
-                List<DataCell> cells = new ArrayList<>();
-                short lastCellNum = row.getLastCellNum();
-                int totalCells = Math.max(lastCellNum, headers.size());
-                for (int i = 0; i < totalCells; i++) {
-                    Cell cell = row.getCell(i);
-                    if (cell != null) {
-                        Header header = i < headers.size() ? headers.get(i) : new Header("");
-                        String value = readCellAsString(cell, evaluator);
-                        DataCell dataCell = new DataCell(header, cell, value);
-                        cells.add(dataCell);
-                        if (!header.isForcedQuotations() && !header.isInferredQuotations()) {
-                            header.setInferredQuotations(dataCell.quotationMarksNeeded());
+        DataSheet parse(Sheet sheet) {
+            SheetBuilder builder = new SheetBuilder(sheet.getSheetName(), interner, columnar);
+            for (Row row : sheet) {
+                builder.startRow(row.getRowNum() + 1);
+                if (builder.isHeaderRow()) {
+                    row.forEach(cell -> builder.headerCell(readCellAsString(cell)));
+                } else {
+                    short lastCellNum = row.getLastCellNum();
+                    for (int i = 0; i < lastCellNum; i++) {
+                        Cell cell = row.getCell(i);
+                        if (cell != null) {
+                            builder.dataCell(i, dataCell(builder, i, cell));
                         }
                     }
                 }
-                dataRows.add(new DataRow(cells));
+                builder.endRow();
             }
+            logFormulaReport(sheet.getSheetName(), formulaCells, evaluator != null, evaluationNanos);
+            return builder.build();
+        }
+
+        /**
+         * Cella di dati con tipo e formato data rilevati alla lettura; le
+         * date vengono eventualmente scritte in ISO-8601.
+         */
+        private DataCell dataCell(SheetBuilder builder, int column, Cell cell) {
+            CellType type = cell.getCellType();
+            boolean date = type == CellType.NUMERIC && isDate(cell);
+            String value = date && dateFormats.isIsoDates()
+                    ? dateFormats.toIso(cell.getNumericCellValue())
+                    : readCellAsString(cell);
+            return new DataCell(builder.headerAt(column), type, date, builder.value(value));
         }
 
-        return new DataSheet(sheet.getSheetName(), headers, dataRows);
+        // Come DateUtil.isCellDateFormatted, con il formato analizzato una sola volta per stile
+        private boolean isDate(Cell cell) {
+            CellStyle style = cell.getCellStyle();
+            if (style == null) {
+                return false;
+            }
+            return dateFormats.isDateStyle(style.getIndex(), style.getDataFormat(), style.getDataFormatString())
+                    && DateUtil.isValidExcelDate(cell.getNumericCellValue());
+        }
+
+        /**
+         * Ritorna il contenuto della cella in formato stringa, gestendo le
+         * eventuali formule tramite l'evaluator oppure, se richiesto, con il
+         * risultato già memorizzato nel file.
+         */
+        private String readCellAsString(Cell cell) {
+            if (cell == null) {
+                return "";
+            }
+            if (cell.getCellType() != CellType.FORMULA) {
+                return dataFormatter.formatCellValue(cell);
+            }
+            formulaCells++;
+            long start = System.nanoTime();
+            String value = dataFormatter.formatCellValue(cell, evaluator);
+            evaluationNanos += System.nanoTime() - start;
+            return value;
+        }
     }
 
     /**
-     * Ritorna il contenuto della cella in formato stringa, gestendo le
-     * eventuali formule tramite l'evaluator.
+     * Riporta nel log quante celle con formula contiene il foglio e, se sono
+     * state rivalutate, quanto tempo ha richiesto la valutazione.
      */
-    private String readCellAsString(Cell cell, FormulaEvaluator evaluator) {
-        if (cell == null) {
-            return "";
+    static void logFormulaReport(String sheetName, int formulaCells, boolean evaluated, long evaluationNanos) {
+        if (formulaCells == 0) {
+            return;
+        }
+        if (evaluated) {
+            LoggerUI.log(String.format("Foglio '%s': %d celle con formula valutate in %d ms",
+                    sheetName, formulaCells, TimeUnit.NANOSECONDS.toMillis(evaluationNanos)));
+        } else {
+            LoggerUI.log(String.format("Foglio '%s': %d celle con formula lette dai valori memorizzati nel file",
+                    sheetName, formulaCells));
         }
-        return dataFormatter.formatCellValue(cell, evaluator);
     }
 
     /**
@@ -105,14 +349,24 @@ public class ExcelDataReader {
             return;
         }
         data.getDataSheets().remove(mappingSheet);
+        Map<String, String> oldName2newName = sheetNameMapping(mappingSheet);
+        data.getDataSheets().stream().
+                filter(s -> oldName2newName.keySet().contains(s.getName())).
+                forEach(s -> s.setName(oldName2newName.get(s.getName())));
+    }
+
+    /**
+     * Legge dal foglio "_mapping" le coppie nome originale / nuovo nome.
+     */
+    static Map<String, String> sheetNameMapping(DataSheet mappingSheet) {
         if (mappingSheet.getHeaders().size() != 2) {
             throw new RuntimeException("Il foglio di mapping deve contenere esattamente due colonne");
         }
         Map<String, String> oldName2newName = new LinkedHashMap();
-        mappingSheet.getDataRows().forEach(r -> oldName2newName.put(r.get(0).getValue(), r.get(1).getValue()));
-        data.getDataSheets().stream().
-                filter(s -> oldName2newName.keySet().contains(s.getName())).
-                forEach(s -> s.setName(oldName2newName.get(s.getName())));
+        mappingSheet.getDataRows().stream()
+                .filter(r -> r.get(0) != null && r.get(1) != null)
+                .forEach(r -> oldName2newName.put(r.get(0).getValue(), r.get(1).getValue()));
+        return oldName2newName;
     }
 
     public static void main(String[] args) throws Exception {
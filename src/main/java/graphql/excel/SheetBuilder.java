@@ -0,0 +1,157 @@
+package graphql.excel;
+
+import graphql.model.ColumnarDataSheet;
+import graphql.model.DataCell;
+import graphql.model.DataRow;
+import graphql.model.DataSheet;
+import graphql.model.Header;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumula intestazioni e righe di un foglio man mano che il reader le
+ * incontra, applicando le stesse regole indipendentemente dal formato di
+ * origine: la prima riga presente è l'intestazione, le successive sono dati.
+ * <p>
+ * Per default le righe vengono raccolte in memoria, come oggetti
+ * {@link DataRow} oppure per colonne in un {@link ColumnarDataSheet}; le
+ * sottoclassi possono inoltrarle altrove ridefinendo {@link #headersRead} e
+ * {@link #rowRead}.
+ */
+class SheetBuilder {
+
+    private final String name;
+    private final ValueInterner interner;
+    private final List<Header> headers = new ArrayList<>();
+    private final List<Header> extraHeaders = new ArrayList<>();
+    private final List<DataRow> dataRows = new ArrayList<>();
+    private final ColumnarDataSheet.Builder columns;
+    private boolean headerRead = false;
+    private List<DataCell> cells;
+    private int rowNumber;
+
+    SheetBuilder(String name, ValueInterner interner) {
+        this(name, interner, false);
+    }
+
+    /**
+     * @param columnar se true le righe vengono memorizzate per colonne
+     */
+    SheetBuilder(String name, ValueInterner interner, boolean columnar) {
+        this.name = name;
+        this.interner = interner;
+        this.columns = columnar ? new ColumnarDataSheet.Builder() : null;
+    }
+
+    /**
+     * Nome del foglio in costruzione.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Apre una nuova riga fisica del foglio.
+     *
+     * @param rowNumber numero della riga nel foglio, a partire da 1
+     */
+    void startRow(int rowNumber) {
+        this.rowNumber = rowNumber;
+        cells = new ArrayList<>();
+    }
+
+    /**
+     * Indica se la riga corrente è quella di intestazione.
+     */
+    boolean isHeaderRow() {
+        return !headerRead;
+    }
+
+    /**
+     * Aggiunge una cella alla riga di intestazione.
+     */
+    void headerCell(String value) {
+        headers.add(new Header(value, headers.size()));
+    }
+
+    /**
+     * Intestazione associata alla colonna indicata; le colonne oltre
+     * l'intestazione ricevono un'intestazione vuota, la stessa per tutte le
+     * righe.
+     */
+    Header headerAt(int column) {
+        if (column < headers.size()) {
+            return headers.get(column);
+        }
+        int extra = column - headers.size();
+        while (extraHeaders.size() <= extra) {
+            extraHeaders.add(new Header("", headers.size() + extraHeaders.size()));
+        }
+        return extraHeaders.get(extra);
+    }
+
+    /**
+     * Istanza condivisa del valore di cella, da usare per costruire le
+     * {@link DataCell}: valori ripetuti nel file occupano memoria una sola
+     * volta.
+     */
+    String value(String value) {
+        return interner.intern(value);
+    }
+
+    /**
+     * Aggiunge una cella di dati alla riga corrente, aggiornando la
+     * deduzione delle virgolette e del tipo per la colonna. Le celle vanno
+     * aggiunte in ordine di colonna.
+     */
+    void dataCell(int column, DataCell dataCell) {
+        if (columns != null) {
+            columns.cell(column, dataCell);
+        } else {
+            cells.add(dataCell);
+        }
+        Header header = dataCell.getHeader();
+        if (!header.isForcedQuotations() && !header.isInferredQuotations()) {
+            header.setInferredQuotations(dataCell.quotationMarksNeeded());
+        }
+        header.inferFieldType(dataCell);
+    }
+
+    /**
+     * Chiude la riga corrente.
+     */
+    void endRow() {
+        if (!headerRead) {
+            headerRead = true;
+            headersRead(headers);
+        } else if (columns != null) {
+            columns.endRow(rowNumber);
+        } else {
+            rowRead(new DataRow(cells, rowNumber));
+        }
+        cells = null;
+    }
+
+    /**
+     * Invocato quando la riga di intestazione è completa.
+     */
+    protected void headersRead(List<Header> headers) {
+    }
+
+    /**
+     * Invocato per ogni riga di dati completata.
+     */
+    protected void rowRead(DataRow row) {
+        dataRows.add(row);
+    }
+
+    /**
+     * Restituisce il foglio completo.
+     */
+    DataSheet build() {
+        if (columns != null) {
+            return columns.build(name, headers);
+        }
+        return new DataSheet(name, headers, dataRows);
+    }
+}
@@ -0,0 +1,179 @@
+package graphql.excel;
+
+import graphql.model.DataRow;
+import graphql.model.Header;
+import graphql.model.RowSource;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RowSource} alimentata da un thread produttore che decodifica il
+ * foglio e deposita le righe in una coda limitata: il produttore si ferma
+ * quando la coda è piena, quindi in memoria resta al massimo una finestra di
+ * righe. La lettura parte al primo accesso a intestazioni o righe.
+ */
+class StreamingRowSource implements RowSource, Closeable {
+
+    /**
+     * Decodifica del foglio, che notifica intestazioni e righe al builder.
+     */
+    interface SheetParser {
+
+        void parse(SheetBuilder builder) throws Exception;
+    }
+
+    private static final Object END_OF_SHEET = new Object();
+
+    private final String sheetName;
+    private final ValueInterner interner;
+    private final SheetParser parser;
+    private final BlockingQueue<Object> queue;
+    private final CompletableFuture<List<Header>> headers = new CompletableFuture<>();
+
+    private Thread producer;
+    private boolean iterated = false;
+    private volatile boolean closed = false;
+    private volatile Throwable failure;
+
+    StreamingRowSource(String sheetName, int windowSize, ValueInterner interner, SheetParser parser) {
+        this.sheetName = sheetName;
+        this.interner = interner;
+        this.parser = parser;
+        this.queue = new ArrayBlockingQueue<>(Math.max(windowSize, 1));
+    }
+
+    private synchronized void start() {
+        if (producer == null) {
+            producer = new Thread(this::produce, "excel-stream-" + sheetName);
+            producer.setDaemon(true);
+            producer.start();
+        }
+    }
+
+    private void produce() {
+        try {
+            parser.parse(new SheetBuilder(sheetName, interner) {
+                @Override
+                protected void headersRead(List<Header> sheetHeaders) {
+                    headers.complete(sheetHeaders);
+                }
+
+                @Override
+                protected void rowRead(DataRow row) {
+                    put(row);
+                }
+            });
+        } catch (Throwable t) {
+            if (!closed) {
+                failure = t;
+                headers.completeExceptionally(t);
+            }
+        } finally {
+            // Foglio senza alcuna riga: nessuna intestazione
+            headers.complete(Collections.emptyList());
+            if (!closed) {
+                put(END_OF_SHEET);
+            }
+        }
+    }
+
+    private void put(Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Lettura del foglio '" + sheetName + "' interrotta");
+        }
+    }
+
+    @Override
+    public List<Header> headers() {
+        start();
+        try {
+            return headers.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Lettura del foglio '" + sheetName + "' interrotta", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Errore nella lettura del foglio '" + sheetName + "': " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public synchronized Iterator<DataRow> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Le righe del foglio '" + sheetName + "' sono già state lette in streaming");
+        }
+        iterated = true;
+        start();
+        return new Iterator<DataRow>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = take();
+                }
+                return next != END_OF_SHEET;
+            }
+
+            @Override
+            public DataRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                DataRow row = (DataRow) next;
+                next = null;
+                return row;
+            }
+        };
+    }
+
+    private Object take() {
+        Object item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Lettura del foglio '" + sheetName + "' interrotta", e);
+        }
+        if (item == END_OF_SHEET) {
+            // Il segnale di fine resta in coda per eventuali chiamate successive
+            queue.offer(END_OF_SHEET);
+            if (failure != null) {
+                throw new IllegalStateException("Errore nella lettura del foglio '" + sheetName + "': " + failure.getMessage(), failure);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Interrompe il produttore se la lettura non è terminata.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread;
+        synchronized (this) {
+            thread = producer;
+        }
+        if (thread != null && thread.isAlive()) {
+            thread.interrupt();
+            queue.clear();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package graphql.excel;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabella di deduplicazione dei valori letti da un file: valori uguali,
+ * frequenti nelle colonne di riferimento, condividono un'unica istanza di
+ * String invece di una copia per cella. È condivisa tra i fogli letti in
+ * parallelo, quindi thread-safe.
+ * <p>
+ * Oltre il limite di voci i nuovi valori non vengono più registrati, così
+ * colonne di valori tutti distinti (es. codici univoci) non fanno crescere la
+ * tabella senza beneficio.
+ */
+class ValueInterner {
+
+    static final int DEFAULT_MAX_SIZE = 500_000;
+
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    ValueInterner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Restituisce l'istanza condivisa del valore, registrandolo se non
+     * ancora presente e se c'è spazio nella tabella.
+     */
+    String intern(String value) {
+        if (value == null || value.isEmpty()) {
+            return value;
+        }
+        String shared = values.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (values.size() >= maxSize) {
+            return value;
+        }
+        shared = values.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    /**
+     * Numero di valori distinti registrati.
+     */
+    int size() {
+        return values.size();
+    }
+}
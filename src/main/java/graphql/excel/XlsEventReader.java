@@ -0,0 +1,304 @@
+package graphql.excel;
+
+import graphql.model.DataCell;
+import graphql.model.DataFile;
+import graphql.model.DataSheet;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.MissingRecordAwareHSSFListener;
+import org.apache.poi.hssf.eventusermodel.dummyrecord.LastCellOfRowDummyRecord;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * Reader per i file .xls (BIFF8) basato sull'API a eventi di HSSF: i record
+ * del workbook vengono elaborati uno alla volta senza costruire il modello
+ * HSSFWorkbook, con le stesse regole di conversione degli altri reader.
+ * <p>
+ * Nel formato BIFF8 tutti i fogli si trovano in un unico flusso, quindi
+ * vengono letti in sequenza. Come per gli .xlsx in streaming, le formule non
+ * vengono rivalutate: si usa il risultato memorizzato nel file. I fogli
+ * grafico e i grafici incorporati nei fogli di lavoro, che hanno un proprio
+ * BOF/EOF nel flusso, vengono saltati.
+ */
+class XlsEventReader {
+
+    private final ValueInterner interner;
+    private final boolean columnar;
+    private final DateFormats dateFormats;
+
+    /**
+     * @param interner tabella dei valori condivisa dai fogli del file,
+     * inizializzata con le stringhe condivise del workbook
+     * @param columnar se true i fogli vengono memorizzati per colonne
+     * @param dateFormats riconoscimento e normalizzazione delle date del file
+     */
+    XlsEventReader(ValueInterner interner, boolean columnar, DateFormats dateFormats) {
+        this.interner = interner;
+        this.columnar = columnar;
+        this.dateFormats = dateFormats;
+    }
+
+    /**
+     * Legge tutti i fogli del file nell'ordine del workbook.
+     */
+    DataFile read(File file) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+            WorkbookListener listener = new WorkbookListener();
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(listener.formatListener);
+            new HSSFEventFactory().processWorkbookEvents(request, fs);
+            return new DataFile(listener.sheets);
+        }
+    }
+
+    /**
+     * Legge i fogli da record già decodificati, nell'ordine del flusso del
+     * workbook.
+     */
+    DataFile read(List<? extends Record> records) {
+        WorkbookListener listener = new WorkbookListener();
+        for (Record record : records) {
+            listener.formatListener.processRecord(record);
+        }
+        return new DataFile(listener.sheets);
+    }
+
+    /**
+     * Riceve i record del workbook e li trasforma in chiamate al
+     * {@link SheetBuilder} del foglio corrente.
+     */
+    private class WorkbookListener implements HSSFListener {
+
+        private final FormatTrackingHSSFListener formatListener = new FormatTrackingHSSFListener(new MissingRecordAwareHSSFListener(this));
+        private final List<BoundSheetRecord> boundSheets = new ArrayList<>();
+        // Fogli in ordine di posizione nel flusso, calcolati al primo foglio
+        private BoundSheetRecord[] sheetsByPosition;
+        private final List<DataSheet> sheets = new ArrayList<>();
+        // Annidamento dei blocchi BOF/EOF: 1 per i fogli, di più per i grafici incorporati
+        private int depth = 0;
+        private int substreams = 0;
+        private String[] sharedStrings = new String[0];
+
+        private SheetBuilder builder;
+        // Righe dichiarate dai RowRecord: quelle senza celle sono comunque righe del foglio
+        private final BitSet declaredRows = new BitSet();
+        private int nextRow = 0;
+        private int currentRow = -1;
+        private int formulaCells = 0;
+        // Formula con risultato testuale: il valore arriva nel record successivo
+        private FormulaRecord pendingFormula;
+
+        @Override
+        public void processRecord(Record record) {
+            switch (record.getSid()) {
+                case BoundSheetRecord.sid:
+                    boundSheets.add((BoundSheetRecord) record);
+                    break;
+                case DateWindow1904Record.sid:
+                    dateFormats.setDate1904(((DateWindow1904Record) record).getWindowing() == 1);
+                    break;
+                case SSTRecord.sid:
+                    SSTRecord sst = (SSTRecord) record;
+                    sharedStrings = new String[sst.getNumUniqueStrings()];
+                    for (int i = 0; i < sharedStrings.length; i++) {
+                        sharedStrings[i] = interner.intern(sst.getString(i).getString());
+                    }
+                    break;
+                case BOFRecord.sid:
+                    BOFRecord bof = (BOFRecord) record;
+                    // Ogni blocco di primo livello dopo quello globale è un foglio, anche di tipo grafico
+                    if (++depth == 1 && bof.getType() != BOFRecord.TYPE_WORKBOOK) {
+                        int index = substreams++;
+                        if (bof.getType() == BOFRecord.TYPE_WORKSHEET) {
+                            startSheet(sheetName(index));
+                        }
+                    }
+                    break;
+                case EOFRecord.sid:
+                    if (--depth == 0 && builder != null) {
+                        endSheet();
+                    }
+                    break;
+                default:
+                    if (builder != null && depth == 1) {
+                        processSheetRecord(record);
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Nome del foglio che occupa la posizione indicata nel flusso: i
+         * BoundSheetRecord seguono l'ordine delle schede, che può differire
+         * da quello dei fogli nel flusso.
+         */
+        private String sheetName(int index) {
+            if (sheetsByPosition == null) {
+                sheetsByPosition = BoundSheetRecord.orderByBofPosition(boundSheets);
+            }
+            return index < sheetsByPosition.length ? sheetsByPosition[index].getSheetname() : "Sheet" + index;
+        }
+
+        private void startSheet(String name) {
+            builder = new SheetBuilder(name, interner, columnar);
+            declaredRows.clear();
+            nextRow = 0;
+            currentRow = -1;
+            formulaCells = 0;
+            pendingFormula = null;
+        }
+
+        private void endSheet() {
+            endRow();
+            emptyRowsBefore(Integer.MAX_VALUE);
+            ExcelDataReader.logFormulaReport(builder.getName(), formulaCells, false, 0);
+            sheets.add(builder.build());
+            builder = null;
+        }
+
+        private void processSheetRecord(Record record) {
+            if (record instanceof LastCellOfRowDummyRecord) {
+                if (((LastCellOfRowDummyRecord) record).getRow() == currentRow) {
+                    endRow();
+                }
+                return;
+            }
+            switch (record.getSid()) {
+                case RowRecord.sid:
+                    declaredRows.set(((RowRecord) record).getRowNumber());
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord label = (LabelSSTRecord) record;
+                    cell(label, CellType.STRING, false, sharedStrings[label.getSSTIndex()]);
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord oldLabel = (LabelRecord) record;
+                    cell(oldLabel, CellType.STRING, false, builder.value(oldLabel.getValue()));
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord) record;
+                    boolean date = isDate(number, number.getValue());
+                    cell(number, CellType.NUMERIC, date, builder.value(date && dateFormats.isIsoDates()
+                            ? dateFormats.toIso(number.getValue())
+                            : formatListener.formatNumberDateCell(number)));
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord boolErr = (BoolErrRecord) record;
+                    if (boolErr.isBoolean()) {
+                        cell(boolErr, CellType.BOOLEAN, false, boolErr.getBooleanValue() ? "TRUE" : "FALSE");
+                    } else {
+                        cell(boolErr, CellType.ERROR, false, FormulaError.forInt(boolErr.getErrorValue()).getString());
+                    }
+                    break;
+                case BlankRecord.sid:
+                    cell((BlankRecord) record, CellType.BLANK, false, "");
+                    break;
+                case FormulaRecord.sid:
+                    formula((FormulaRecord) record);
+                    break;
+                case StringRecord.sid:
+                    if (pendingFormula != null) {
+                        cell(pendingFormula, CellType.FORMULA, false, builder.value(((StringRecord) record).getString()));
+                        pendingFormula = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Formula: come nel modello HSSF la cella resta di tipo FORMULA,
+         * con il valore del risultato memorizzato.
+         */
+        private void formula(FormulaRecord formula) {
+            formulaCells++;
+            switch (formula.getCachedResultTypeEnum()) {
+                case STRING:
+                    if (formula.hasCachedResultString()) {
+                        pendingFormula = formula;
+                    } else {
+                        cell(formula, CellType.FORMULA, false, "");
+                    }
+                    break;
+                case BOOLEAN:
+                    cell(formula, CellType.FORMULA, false, formula.getCachedBooleanValue() ? "TRUE" : "FALSE");
+                    break;
+                case ERROR:
+                    cell(formula, CellType.FORMULA, false, FormulaError.forInt(formula.getCachedErrorValue()).getString());
+                    break;
+                default:
+                    cell(formula, CellType.FORMULA, false, builder.value(formatListener.formatNumberDateCell(formula)));
+                    break;
+            }
+        }
+
+        private boolean isDate(CellValueRecordInterface record, double value) {
+            return dateFormats.isDateStyle(record.getXFIndex(), formatListener.getFormatIndex(record), formatListener.getFormatString(record))
+                    && DateUtil.isValidExcelDate(value);
+        }
+
+        private void cell(CellValueRecordInterface record, CellType type, boolean date, String value) {
+            if (record.getRow() != currentRow) {
+                endRow();
+                emptyRowsBefore(record.getRow());
+                startRow(record.getRow());
+            }
+            int column = record.getColumn();
+            if (builder.isHeaderRow()) {
+                builder.headerCell(value);
+            } else {
+                builder.dataCell(column, new DataCell(builder.headerAt(column), type, date, value));
+            }
+        }
+
+        /**
+         * Aggiunge le righe dichiarate senza celle che precedono la riga
+         * indicata, come le riporterebbe il modello HSSFWorkbook.
+         */
+        private void emptyRowsBefore(int row) {
+            for (int i = declaredRows.nextSetBit(nextRow); i >= 0 && i < row; i = declaredRows.nextSetBit(i + 1)) {
+                builder.startRow(i + 1);
+                builder.endRow();
+            }
+            nextRow = Math.max(nextRow, row == Integer.MAX_VALUE ? row : row + 1);
+        }
+
+        private void startRow(int row) {
+            builder.startRow(row + 1);
+            currentRow = row;
+        }
+
+        private void endRow() {
+            if (currentRow >= 0) {
+                builder.endRow();
+                currentRow = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package graphql.excel;
+
+import graphql.model.DataFile;
+import graphql.model.DataSheet;
+import graphql.model.SheetMetadata;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Lettura dei soli metadati di un file .xlsx: di ogni foglio viene
+ * decompressa solo la parte iniziale, fino alla riga di intestazione, e il
+ * numero di righe è ricavato dall'elemento dimension. Solo il foglio
+ * "_mapping" viene letto per intero.
+ * <p>
+ * Delle shared strings vengono conservate solo quelle usate dalle righe
+ * lette, interrompendo la lettura della tabella all'ultima che serve.
+ */
+class XlsxMetadataScanner {
+
+    /**
+     * Foglio del pacchetto con la parte XML che ne contiene i dati.
+     */
+    private static class SheetEntry {
+
+        private final String name;
+        private final PackagePart part;
+        private final int rowLimit;
+        private String dimension;
+
+        SheetEntry(String name, PackagePart part) {
+            this.name = name;
+            this.part = part;
+            this.rowLimit = name.equalsIgnoreCase(DataFile.MAPPING_SHEET_NAME) ? Integer.MAX_VALUE : 1;
+        }
+    }
+
+    /**
+     * Restituisce i metadati dei fogli nell'ordine del workbook, con i nomi
+     * già modificati secondo l'eventuale foglio "_mapping".
+     */
+    List<SheetMetadata> scan(File file) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Impossibile aprire il file Excel '" + file + "': " + e.getMessage(), e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            // Le intestazioni mantengono il testo della cella: nessuna normalizzazione delle date
+            DateFormats dateFormats = new DateFormats(false);
+            dateFormats.setDate1904(XlsxStreamingReader.isDate1904(reader));
+            List<SheetEntry> entries = new ArrayList<>();
+            XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (iterator.hasNext()) {
+                iterator.next().close();
+                entries.add(new SheetEntry(iterator.getSheetName(), iterator.getSheetPart()));
+            }
+
+            // Primo passaggio: indici delle shared strings usate dalle intestazioni
+            BitSet usedStrings = new BitSet();
+            for (SheetEntry entry : entries) {
+                SheetBuilder builder = new SheetBuilder(entry.name, new ValueInterner(0));
+                XlsxStreamingReader.SheetHandler handler = new XlsxStreamingReader.SheetHandler(builder, index -> {
+                    usedStrings.set(index);
+                    return "";
+                }, styles, dateFormats, entry.rowLimit);
+                handler.parse(entry.part);
+                entry.dimension = handler.getDimension();
+            }
+            Map<Integer, String> sharedStrings = readSharedStrings(pkg, usedStrings);
+
+            // Secondo passaggio: intestazioni con i valori effettivi
+            List<SheetMetadata> sheets = new ArrayList<>();
+            DataSheet mappingSheet = null;
+            for (SheetEntry entry : entries) {
+                SheetBuilder builder = new SheetBuilder(entry.name, new ValueInterner(0));
+                new XlsxStreamingReader.SheetHandler(builder, index -> sharedStrings.getOrDefault(index, ""), styles, dateFormats, entry.rowLimit).parse(entry.part);
+                DataSheet sheet = builder.build();
+                if (entry.rowLimit == Integer.MAX_VALUE) {
+                    mappingSheet = sheet;
+                } else {
+                    sheets.add(new SheetMetadata(entry.name, sheet.getHeaders(), dataRowCount(entry.dimension)));
+                }
+            }
+            if (mappingSheet != null) {
+                Map<String, String> oldName2newName = ExcelDataReader.sheetNameMapping(mappingSheet);
+                sheets.stream()
+                        .filter(s -> oldName2newName.containsKey(s.getName()))
+                        .forEach(s -> s.setName(oldName2newName.get(s.getName())));
+            }
+            return sheets;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Impossibile leggere il file Excel '" + file + "': " + e.getMessage(), e);
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Righe di dati dichiarate dall'area del foglio (es. "A1:J500" = 499
+     * righe oltre l'intestazione), -1 se l'area non è dichiarata.
+     */
+    static int dataRowCount(String dimension) {
+        if (dimension == null || dimension.isEmpty()) {
+            return -1;
+        }
+        String[] bounds = dimension.split(":");
+        int first = rowNumber(bounds[0]);
+        int last = rowNumber(bounds[bounds.length - 1]);
+        if (first < 0 || last < 0) {
+            return -1;
+        }
+        return Math.max(last - first, 0);
+    }
+
+    private static int rowNumber(String cellReference) {
+        int i = 0;
+        while (i < cellReference.length() && !Character.isDigit(cellReference.charAt(i))) {
+            i++;
+        }
+        try {
+            return Integer.parseInt(cellReference.substring(i));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Legge dalla tabella delle shared strings solo le voci con gli indici
+     * indicati, fermandosi dopo l'ultima.
+     */
+    private static Map<Integer, String> readSharedStrings(OPCPackage pkg, BitSet indexes) throws IOException, SAXException, ParserConfigurationException {
+        Map<Integer, String> strings = new HashMap<>();
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (indexes.isEmpty() || parts.isEmpty()) {
+            return strings;
+        }
+        SharedStringsHandler handler = new SharedStringsHandler(indexes, strings);
+        try (InputStream is = parts.get(0).getInputStream()) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(is));
+        } catch (SharedStringsHandler.AllStringsRead e) {
+            // Voci richieste lette: il resto della tabella non viene decompresso
+        }
+        return strings;
+    }
+
+    /**
+     * Handler SAX della tabella delle shared strings: il testo di una voce è
+     * la concatenazione dei suoi elementi t, come in
+     * ReadOnlySharedStringsTable.
+     */
+    private static class SharedStringsHandler extends DefaultHandler {
+
+        private static class AllStringsRead extends SAXException {
+            private static final long serialVersionUID = 1L;
+        }
+
+        private final BitSet indexes;
+        private final Map<Integer, String> strings;
+        private final int lastIndex;
+        private final StringBuilder text = new StringBuilder();
+        private boolean collectText = false;
+        private int index = -1;
+
+        SharedStringsHandler(BitSet indexes, Map<Integer, String> strings) {
+            this.indexes = indexes;
+            this.strings = strings;
+            this.lastIndex = indexes.length() - 1;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("si".equals(localName)) {
+                index++;
+                text.setLength(0);
+            } else if ("t".equals(localName)) {
+                collectText = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if ("t".equals(localName)) {
+                collectText = false;
+            } else if ("si".equals(localName)) {
+                if (indexes.get(index)) {
+                    // Decodifica dei caratteri speciali (_xHHHH_) come per la tabella completa
+                    strings.put(index, new XSSFRichTextString(text.toString()).getString());
+                }
+                if (index >= lastIndex) {
+                    throw new AllStringsRead();
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collectText) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+}
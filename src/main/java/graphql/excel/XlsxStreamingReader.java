@@ -0,0 +1,431 @@
+package graphql.excel;
+
+import graphql.model.DataCell;
+import graphql.model.DataFile;
+import graphql.model.DataSheet;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.IntFunction;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reader per file .xlsx basato su {@link XSSFReader} e parsing SAX dei fogli:
+ * le righe vengono decodificate una alla volta senza costruire il modello
+ * XSSFWorkbook, così la memoria occupata dipende solo dai dati estratti.
+ * <p>
+ * Le formule non vengono rivalutate: si usa il risultato memorizzato da
+ * Excel nel file.
+ */
+class XlsxStreamingReader {
+
+    private final int parallelism;
+    private final int windowSize;
+    private final ValueInterner interner;
+    private final boolean columnar;
+    private final DateFormats dateFormats;
+
+    /**
+     * @param parallelism fogli decodificati contemporaneamente nella lettura
+     * completa
+     * @param windowSize se maggiore di zero, i fogli vengono restituiti in
+     * streaming con al più questo numero di righe decodificate in anticipo
+     * @param interner tabella dei valori condivisa dai fogli del file,
+     * inizializzata con le shared strings del workbook
+     * @param columnar se true i fogli letti completamente vengono memorizzati
+     * per colonne
+     * @param dateFormats riconoscimento e normalizzazione delle date del file
+     */
+    XlsxStreamingReader(int parallelism, int windowSize, ValueInterner interner, boolean columnar, DateFormats dateFormats) {
+        this.parallelism = parallelism;
+        this.windowSize = windowSize;
+        this.interner = interner;
+        this.columnar = columnar;
+        this.dateFormats = dateFormats;
+    }
+
+    /**
+     * Legge tutti i fogli del file nell'ordine del workbook. Ogni foglio è
+     * una parte distinta del pacchetto, quindi i fogli vengono decodificati
+     * in parallelo condividendo solo shared strings e stili, in sola lettura.
+     * In modalità streaming il pacchetto resta aperto fino alla chiusura del
+     * {@link DataFile} restituito.
+     */
+    DataFile read(File file) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Impossibile aprire il file Excel '" + file + "': " + e.getMessage(), e);
+        }
+        boolean keepOpen = false;
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            SharedStrings sharedStrings = new SharedStrings(new ReadOnlySharedStringsTable(pkg), interner);
+            StylesTable styles = reader.getStylesTable();
+            dateFormats.setDate1904(isDate1904(reader));
+            List<Callable<DataSheet>> tasks = new ArrayList<>();
+            List<DataSheet> streamedSheets = new ArrayList<>();
+            List<StreamingRowSource> sources = new ArrayList<>();
+            XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (iterator.hasNext()) {
+                iterator.next().close();
+                String sheetName = iterator.getSheetName();
+                PackagePart sheetPart = iterator.getSheetPart();
+                if (windowSize > 0) {
+                    StreamingRowSource source = new StreamingRowSource(sheetName, windowSize, interner,
+                            builder -> parseSheet(builder, sheetPart, sharedStrings::get, styles));
+                    sources.add(source);
+                    streamedSheets.add(new DataSheet(sheetName, source));
+                } else {
+                    tasks.add(() -> {
+                        SheetBuilder builder = new SheetBuilder(sheetName, interner, columnar);
+                        parseSheet(builder, sheetPart, sharedStrings::get, styles);
+                        return builder.build();
+                    });
+                }
+            }
+            if (windowSize > 0) {
+                keepOpen = true;
+                return new DataFile(streamedSheets, () -> {
+                    sources.forEach(StreamingRowSource::close);
+                    pkg.revert();
+                });
+            }
+            return new DataFile(ExcelDataReader.readSheets(tasks, parallelism));
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Impossibile leggere il file Excel '" + file + "': " + e.getMessage(), e);
+        } finally {
+            if (!keepOpen) {
+                pkg.revert();
+            }
+        }
+    }
+
+    private void parseSheet(SheetBuilder builder, PackagePart sheetPart, IntFunction<String> sharedStrings, StylesTable styles) throws IOException, SAXException, ParserConfigurationException {
+        SheetHandler handler = new SheetHandler(builder, sharedStrings, styles, dateFormats, Integer.MAX_VALUE);
+        handler.parse(sheetPart);
+        ExcelDataReader.logFormulaReport(builder.getName(), handler.formulaCells, false, 0);
+    }
+
+    /**
+     * Legge dall'elemento workbookPr se il workbook usa il sistema di date
+     * 1904, fermandosi appena lo trova.
+     */
+    static boolean isDate1904(XSSFReader reader) throws IOException, OpenXML4JException, SAXException {
+        boolean[] date1904 = {false};
+        try (InputStream workbookStream = reader.getWorkbookData()) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                    if ("workbookPr".equals(localName)) {
+                        String value = attributes.getValue("date1904");
+                        date1904[0] = "1".equals(value) || "true".equalsIgnoreCase(value);
+                        throw new SAXException("workbookPr");
+                    } else if ("sheets".equals(localName)) {
+                        // workbookPr precede l'elenco dei fogli: se manca vale il sistema 1900
+                        throw new SAXException("sheets");
+                    }
+                }
+            });
+            parser.parse(new InputSource(workbookStream));
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            // Parsing interrotto appena trovata l'informazione
+        }
+        return date1904[0];
+    }
+
+    /**
+     * Converte il riferimento di cella (es. "AB12") nell'indice di colonna
+     * zero-based.
+     */
+    static int columnIndex(String cellReference) {
+        int column = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    /**
+     * Shared strings del workbook come array di istanze condivise: le celle
+     * di tipo "s" riusano direttamente queste stringhe invece di crearne una
+     * copia per ogni occorrenza. L'array è dimensionato sull'attributo
+     * uniqueCount, facoltativo nel formato: gli indici oltre l'array vengono
+     * letti dalla tabella di POI.
+     */
+    private static class SharedStrings {
+
+        private final ReadOnlySharedStringsTable table;
+        private final ValueInterner interner;
+        private final String[] values;
+
+        SharedStrings(ReadOnlySharedStringsTable table, ValueInterner interner) {
+            this.table = table;
+            this.interner = interner;
+            String[] strings = new String[table.getUniqueCount()];
+            int count = 0;
+            try {
+                for (; count < strings.length; count++) {
+                    strings[count] = interner.intern(table.getItemAt(count).getString());
+                }
+            } catch (IllegalStateException e) {
+                // uniqueCount maggiore delle stringhe effettivamente presenti
+            }
+            this.values = count == strings.length ? strings : Arrays.copyOf(strings, count);
+        }
+
+        String get(int index) {
+            return index < values.length ? values[index] : interner.intern(table.getItemAt(index).getString());
+        }
+    }
+
+    /**
+     * Handler SAX che trasforma gli elementi row/c del foglio in chiamate al
+     * {@link SheetBuilder}, replicando la formattazione di DataFormatter. Può
+     * fermarsi dopo un numero massimo di righe, senza decomprimere il resto
+     * del foglio.
+     */
+    static class SheetHandler extends DefaultHandler {
+
+        /**
+         * Interrompe il parsing al raggiungimento del limite di righe.
+         */
+        private static class RowLimitReached extends SAXException {
+            private static final long serialVersionUID = 1L;
+        }
+
+        // DataFormatter non è thread-safe: un'istanza per foglio
+        private final DataFormatter dataFormatter = new DataFormatter();
+        private final SheetBuilder builder;
+        private final IntFunction<String> sharedStrings;
+        private final StylesTable styles;
+        private final DateFormats dateFormats;
+        private final int rowLimit;
+
+        private final StringBuilder text = new StringBuilder();
+        private boolean collectText = false;
+
+        private int column = -1;
+        private int rowNumber = 0;
+        private String cellRef;
+        private String cellTypeAttr;
+        private String styleAttr;
+        private boolean formula;
+        private boolean hasValue;
+        private int formulaCells = 0;
+        private int rows = 0;
+        private String dimension;
+
+        /**
+         * @param sharedStrings valore della shared string con l'indice dato
+         * @param rowLimit numero massimo di righe da leggere
+         */
+        SheetHandler(SheetBuilder builder, IntFunction<String> sharedStrings, StylesTable styles, DateFormats dateFormats, int rowLimit) {
+            this.builder = builder;
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.dateFormats = dateFormats;
+            this.rowLimit = rowLimit;
+        }
+
+        /**
+         * Esegue il parsing del foglio fino alla fine o al limite di righe.
+         */
+        void parse(PackagePart sheetPart) throws IOException, SAXException, ParserConfigurationException {
+            try (InputStream sheetStream = sheetPart.getInputStream()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(this);
+                parser.parse(new InputSource(sheetStream));
+            } catch (RowLimitReached e) {
+                // Righe richieste lette: il resto del foglio non viene decompresso
+            }
+        }
+
+        /**
+         * Area del foglio dichiarata nell'elemento dimension (es. "A1:J500"),
+         * oppure null se assente o non ancora letta.
+         */
+        String getDimension() {
+            return dimension;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "dimension":
+                    dimension = attributes.getValue("ref");
+                    break;
+                case "row":
+                    column = -1;
+                    String r = attributes.getValue("r");
+                    rowNumber = r != null ? Integer.parseInt(r) : rowNumber + 1;
+                    builder.startRow(rowNumber);
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    cellRef = ref;
+                    column = ref != null ? columnIndex(ref) : column + 1;
+                    cellTypeAttr = attributes.getValue("t");
+                    styleAttr = attributes.getValue("s");
+                    formula = false;
+                    hasValue = false;
+                    text.setLength(0);
+                    break;
+                case "f":
+                    formula = true;
+                    break;
+                case "v":
+                    hasValue = true;
+                    collectText = true;
+                    text.setLength(0);
+                    break;
+                case "t":
+                    // Testo delle stringhe inline (<is><t>...</t></is>)
+                    if ("inlineStr".equals(cellTypeAttr)) {
+                        hasValue = true;
+                        collectText = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    collectText = false;
+                    break;
+                case "c":
+                    endCell();
+                    break;
+                case "row":
+                    builder.endRow();
+                    if (++rows >= rowLimit) {
+                        throw new RowLimitReached();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collectText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        /**
+         * Converte la cella appena chiusa. I tipi non previsti dal formato e i
+         * valori non interpretabili sono errori di lettura del foglio.
+         */
+        private void endCell() throws SAXException {
+            CellType type;
+            boolean date = false;
+            String value;
+            String raw = text.toString();
+            if (!hasValue) {
+                type = formula ? CellType.FORMULA : CellType.BLANK;
+                value = "";
+            } else if ("s".equals(cellTypeAttr)) {
+                type = CellType.STRING;
+                value = sharedStrings.apply(Integer.parseInt(raw));
+            } else if ("inlineStr".equals(cellTypeAttr) || "str".equals(cellTypeAttr)) {
+                type = CellType.STRING;
+                value = builder.value(raw);
+            } else if ("b".equals(cellTypeAttr)) {
+                type = CellType.BOOLEAN;
+                value = "0".equals(raw) ? "FALSE" : "TRUE";
+            } else if ("e".equals(cellTypeAttr)) {
+                type = CellType.ERROR;
+                value = raw;
+            } else if (cellTypeAttr != null && !"n".equals(cellTypeAttr) && !"d".equals(cellTypeAttr)) {
+                throw new SAXException(cellError("tipo di cella '" + cellTypeAttr + "' non supportato"));
+            } else {
+                type = CellType.NUMERIC;
+                // Le celle "d" riportano la data in ISO-8601 invece del numero seriale
+                boolean isoTyped = "d".equals(cellTypeAttr);
+                double number;
+                try {
+                    number = isoTyped ? dateFormats.fromIso(raw) : Double.parseDouble(raw);
+                } catch (RuntimeException e) {
+                    throw new SAXException(cellError("valore '" + raw + "' non valido"), e);
+                }
+                XSSFCellStyle style = cellStyle();
+                int formatIndex = style != null ? style.getDataFormat() : 0;
+                String formatString = style != null ? style.getDataFormatString() : null;
+                if (formatString == null) {
+                    formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+                }
+                boolean dateStyle = dateFormats.isDateStyle(style != null ? style.getIndex() : 0, formatIndex, formatString);
+                date = (isoTyped || dateStyle) && DateUtil.isValidExcelDate(number);
+                if (date && (dateFormats.isIsoDates() || !dateStyle) && !formula) {
+                    value = builder.value(dateFormats.toIso(number));
+                } else {
+                    value = builder.value(formatString != null
+                            ? dataFormatter.formatRawCellContents(number, formatIndex, formatString, dateFormats.isDate1904())
+                            : raw);
+                }
+            }
+            if (formula) {
+                formulaCells++;
+                // Come nel modello XSSF, una formula resta di tipo FORMULA a prescindere dal risultato
+                type = CellType.FORMULA;
+                date = false;
+            }
+
+            if (builder.isHeaderRow()) {
+                builder.headerCell(value);
+            } else {
+                builder.dataCell(column, new DataCell(builder.headerAt(column), type, date, value));
+            }
+        }
+
+        private String cellError(String problem) {
+            return "Foglio '" + builder.getName() + "', cella " + (cellRef != null ? cellRef : "riga " + rowNumber) + ": " + problem;
+        }
+
+        private XSSFCellStyle cellStyle() {
+            if (styles == null || styles.getNumCellStyles() == 0) {
+                return null;
+            }
+            int index = styleAttr != null ? Integer.parseInt(styleAttr) : 0;
+            return styles.getStyleAt(index);
+        }
+    }
+}
@@ -1,63 +1,304 @@
 package graphql.graphql;
 
-import common.Utils;
 import graphql.util.Constants;
+import graphql.util.LoggerUI;
+import graphql.util.Settings;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
 /**
  * Genera query GraphQL per recuperare gli _id di oggetti referenziati,
- * gestendo anche la suddivisione in batch dei valori richiesti.
+ * gestendo anche la suddivisione in batch dei valori richiesti e il
+ * raggruppamento di più ricerche nello stesso documento tramite alias.
+ * <p>
+ * La dimensione dei batch è adattiva: ogni query resta entro una dimensione
+ * massima del corpo della richiesta, quindi i codici brevi viaggiano in
+ * pochi batch grandi e i testi lunghi in batch più piccoli. Il numero di
+ * valori per query cala quando le risposte superano il tempo obiettivo e
+ * torna a crescere quando arrivano rapidamente, sempre entro i limiti
+ * configurati (vedi {@link Settings}).
  */
 public class GraphQLQueryBuilder {
 
+    private static final String SELECTION_TEMPLATE = "  %s: %s___getPage(options: {\n"
+            + "    filter: {\n"
+            + "      %s___in: [%s]\n"
+            + "    }\n"
+            + "    offset: 0,\n"
+            + "    next: 999999\n"
+            + "  }) {\n"
+            + "    items {\n"
+            + "      %s\n"
+            + "      _id\n"
+            + "    }\n"
+            + "  }\n";
+    private static final String DOCUMENT_START = "query {\n";
+    private static final String DOCUMENT_END = "}";
+    private static final String ALIAS_PREFIX = "q";
+    // Involucro JSON della richiesta: {"query":"..."}
+    private static final int BODY_OVERHEAD = 12;
+
+    private final int minBatchSize = Math.max(1, Settings.getInt(Settings.LOOKUP_BATCH_MIN, 20));
+    private final int maxBatchSize = Math.max(minBatchSize, Settings.getInt(Settings.LOOKUP_BATCH_MAX, 1000));
+    private final int maxBodyBytes = Settings.getInt(Settings.LOOKUP_BATCH_BYTES, 32 * 1024);
+    private final long targetMillis = Settings.getInt(Settings.LOOKUP_TARGET_MS, 2000);
+
+    // Numero di valori per query: parte dal massimo, limitato dai byte, e segue i tempi di risposta
+    private int batchSize = maxBatchSize;
+
+    // Statistiche per il riepilogo
+    private int queryCount = 0;
+    private int selectionCount = 0;
+    private int smallestBatch = Integer.MAX_VALUE;
+    private int largestBatch = 0;
+    private int largestBody = 0;
+
     /**
      * Crea una o più query per ottenere l'identificativo di record esistenti
      * filtrando per uno specifico attributo.
      */
     public List<String> buildGetIdQuery(String referencedClassName, String referencedAttributeName, Set<String> referencedAttributeFormattedValues) {
-        Objects.requireNonNull(referencedClassName, "Object name cannot be null");
-        Objects.requireNonNull(referencedAttributeName, "Attribute name cannot be null");
-        Objects.requireNonNull(referencedAttributeFormattedValues, "Attribute value cannot be null");
-
-        List<String> queries = new LinkedList<>();
-
-        int batchSize = 100;
-
-        List<String> list = new ArrayList<>(referencedAttributeFormattedValues);
-        for (int i = 0; i < referencedAttributeFormattedValues.size(); i += batchSize) {
-
-            int end = Math.min(i + batchSize, referencedAttributeFormattedValues.size());
-            List<String> batch = list.subList(i, end);
-
-            String attributeValuesConc = Utils.join(batch, ", ");
-
-            String query = String.format(
-                    "query {\n"
-                    + "  %s___getPage(options: {\n"
-                    + "    filter: {\n"
-                    + "      %s___in: [%s]\n"
-                    + "    }\n"
-                    + "    offset: 0,\n"
-                    + "    next: 999999\n"
-                    + "  }) {\n"
-                    + "    items {\n"
-                    + "      %s\n"
-                    + "      _id\n"
-                    + "    }\n"
-                    + "  }\n"
-                    + "}",
-                    referencedClassName,
-                    referencedAttributeName,
-                    attributeValuesConc,
-                    referencedAttributeName.equals(Constants.ID) ? "" : referencedAttributeName
-            );
-            queries.add(query);
-        }
-        return queries;
+        List<String> queries = new ArrayList<>();
+        for (Document document : buildGetIdDocuments(Collections.singletonList(
+                new Lookup(referencedClassName, referencedAttributeName, referencedAttributeFormattedValues)))) {
+            queries.add(document.getQuery());
+        }
+        return queries;
+    }
+
+    /**
+     * Pianifica le ricerche indicate, anche su classi e attributi diversi,
+     * in documenti GraphQL con più selezioni {@code ___getPage}
+     * distinte da alias, così poche richieste coprono tutte le colonne di
+     * riferimento. Ogni documento contiene al massimo la dimensione corrente
+     * di valori e resta entro la dimensione massima del corpo; un valore che
+     * da solo la supera forma comunque un documento. Il tempo di risposta di
+     * ogni documento va riportato con {@link #recordLatency}.
+     */
+    public synchronized List<Document> buildGetIdDocuments(List<Lookup> lookups) {
+        DocumentPlanner planner = new DocumentPlanner();
+        for (int i = 0; i < lookups.size(); i++) {
+            Lookup lookup = lookups.get(i);
+            String selected = lookup.attributeName.equals(Constants.ID) ? "" : lookup.attributeName;
+            for (String value : lookup.values) {
+                planner.add(i, lookup, selected, value);
+            }
+            planner.closeSelection();
+        }
+        planner.closeDocument();
+        return planner.documents;
+    }
+
+    /**
+     * Accumula selezioni e documenti durante la pianificazione.
+     */
+    private class DocumentPlanner {
+
+        private final List<Document> documents = new ArrayList<>();
+        private final StringBuilder query = new StringBuilder(DOCUMENT_START);
+        private final List<Selection> selections = new ArrayList<>();
+        private int documentValues = 0;
+        private int documentBytes = BODY_OVERHEAD + bodyBytes(DOCUMENT_START + DOCUMENT_END);
+
+        private final StringBuilder values = new StringBuilder();
+        private Lookup lookup;
+        private String selected;
+        private int lookupIndex;
+        private int selectionValues = 0;
+        private int selectionBytes = 0;
+
+        void add(int index, Lookup lookup, String selected, String value) {
+            int valueBytes = bodyBytes(value) + (selectionValues > 0 ? 2 : 0);
+            int openingBytes = selectionValues > 0 ? 0 : selectionBytes(lookup, selected, selections.size());
+            boolean full = documentValues >= batchSize
+                    || documentBytes + selectionBytes + openingBytes + valueBytes > maxBodyBytes;
+            if (full && documentValues > 0) {
+                closeSelection();
+                closeDocument();
+                valueBytes = bodyBytes(value);
+                openingBytes = selectionBytes(lookup, selected, 0);
+            }
+            if (selectionValues == 0) {
+                this.lookup = lookup;
+                this.selected = selected;
+                this.lookupIndex = index;
+                selectionBytes = openingBytes;
+            } else {
+                values.append(", ");
+            }
+            values.append(value);
+            selectionValues++;
+            selectionBytes += valueBytes;
+            documentValues++;
+        }
+
+        void closeSelection() {
+            if (selectionValues == 0) {
+                return;
+            }
+            String alias = ALIAS_PREFIX + selections.size();
+            query.append(String.format(SELECTION_TEMPLATE, alias, lookup.className, lookup.attributeName, values, selected));
+            selections.add(new Selection(alias, lookupIndex, selectionValues));
+            documentBytes += selectionBytes;
+            values.setLength(0);
+            selectionValues = 0;
+            selectionBytes = 0;
+        }
+
+        void closeDocument() {
+            if (selections.isEmpty()) {
+                return;
+            }
+            query.append(DOCUMENT_END);
+            documents.add(new Document(query.toString(), new ArrayList<>(selections), documentValues));
+            queryCount++;
+            selectionCount += selections.size();
+            smallestBatch = Math.min(smallestBatch, documentValues);
+            largestBatch = Math.max(largestBatch, documentValues);
+            largestBody = Math.max(largestBody, documentBytes);
+            query.setLength(0);
+            query.append(DOCUMENT_START);
+            selections.clear();
+            documentValues = 0;
+            documentBytes = BODY_OVERHEAD + bodyBytes(DOCUMENT_START + DOCUMENT_END);
+        }
+    }
+
+    // Byte di una selezione senza valori
+    private static int selectionBytes(Lookup lookup, String selected, int aliasIndex) {
+        return bodyBytes(String.format(SELECTION_TEMPLATE, ALIAS_PREFIX + aliasIndex, lookup.className, lookup.attributeName, "", selected));
+    }
+
+    /**
+     * Aggiorna la dimensione dei batch con il tempo di risposta di una query:
+     * oltre il tempo obiettivo la riduce in proporzione, sotto la metà la
+     * raddoppia se il batch era pieno.
+     */
+    public synchronized void recordLatency(int values, long elapsedMillis) {
+        if (elapsedMillis > targetMillis) {
+            batchSize = Math.max(minBatchSize, Math.min(batchSize, (int) (values * targetMillis / elapsedMillis)));
+        } else if (values >= batchSize && elapsedMillis < targetMillis / 2) {
+            batchSize = Math.min(maxBatchSize, batchSize * 2);
+        }
     }
 
+    /**
+     * Numero di valori per query usato per i prossimi batch.
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Riporta nel log le dimensioni dei batch usate, se sono state generate
+     * query di ricerca.
+     */
+    public synchronized void logSummary() {
+        if (queryCount > 0) {
+            LoggerUI.log("Ricerca degli ID: " + queryCount + " query con " + selectionCount + " selezioni, da " + smallestBatch
+                    + " a " + largestBatch + " valori per query (limite finale " + batchSize + "), corpo massimo " + largestBody + " byte");
+        }
+    }
+
+    // Byte della stringa nel corpo JSON della richiesta, compresi gli escape
+    private static int bodyBytes(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t') {
+                bytes += 2;
+            } else if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // Le coppie di surrogati occupano 4 byte, 2 per ciascun carattere
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Ricerca degli ID di una classe per i valori formattati di un suo
+     * attributo.
+     */
+    public static class Lookup {
+
+        private final String className;
+        private final String attributeName;
+        private final Collection<String> values;
+
+        public Lookup(String className, String attributeName, Collection<String> values) {
+            this.className = Objects.requireNonNull(className, "Object name cannot be null");
+            this.attributeName = Objects.requireNonNull(attributeName, "Attribute name cannot be null");
+            this.values = Objects.requireNonNull(values, "Attribute value cannot be null");
+        }
+    }
+
+    /**
+     * Documento di ricerca con le sue selezioni e il numero totale di
+     * valori.
+     */
+    public static class Document {
+
+        private final String query;
+        private final List<Selection> selections;
+        private final int size;
+
+        Document(String query, List<Selection> selections, int size) {
+            this.query = query;
+            this.selections = selections;
+            this.size = size;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public List<Selection> getSelections() {
+            return selections;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Selezione {@code ___getPage} di un documento: l'alias con cui compare
+     * nella risposta e la posizione della ricerca a cui appartiene.
+     */
+    public static class Selection {
+
+        private final String alias;
+        private final int lookup;
+        private final int size;
+
+        Selection(String alias, int lookup, int size) {
+            this.alias = alias;
+            this.lookup = lookup;
+            this.size = size;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        /**
+         * Posizione della ricerca nella lista passata a
+         * {@link #buildGetIdDocuments}.
+         */
+        public int getLookup() {
+            return lookup;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
 }
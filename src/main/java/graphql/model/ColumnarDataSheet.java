@@ -0,0 +1,495 @@
+package graphql.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Foglio memorizzato per colonne: ogni colonna conserva i valori in un array
+ * di stringhe e il tipo di ogni cella in un byte, invece di un oggetto
+ * {@link DataRow} con lista e mappa per ogni riga e un {@link DataCell} per
+ * ogni cella. Righe e celle vengono create al primo accesso come viste sui
+ * dati delle colonne e riutilizzate finché sono referenziate altrove: due
+ * letture della stessa riga restituiscono la stessa istanza, e la scansione
+ * di una colonna restituisce le celle delle righe già in uso.
+ * <p>
+ * Insieme alla deduplicazione dei valori fatta dal reader, l'occupazione per
+ * cella si riduce al riferimento al valore più un byte. Le colonne di soli
+ * interi, decimali, date ISO-8601 o booleani (vedi
+ * {@link Header#getFieldType()}) vengono infine convertite in array
+ * primitivi; per queste il tipo della colonna determina anche la
+ * serializzazione, senza analizzare di nuovo il testo di ogni cella.
+ */
+public class ColumnarDataSheet extends DataSheet {
+
+    // Tag di una cella assente; per le altre il tag vale ordinal() + 1 del tipo
+    private static final byte ABSENT = 0;
+    private static final byte DATE_FLAG = 0x40;
+    private static final CellType[] CELL_TYPES = CellType.values();
+    // Cifre decimali oltre le quali una colonna numerica resta di stringhe
+    private static final int MAX_SCALE = 9;
+
+    private final Column[] columns;
+    private final RowList rows;
+
+    private ColumnarDataSheet(String name, List<Header> headers, Column[] columns, RowList rows) {
+        super(name, headers, rows);
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * Scansione diretta della colonna, senza costruire le righe.
+     */
+    @Override
+    public Iterable<DataCell> cells(Header header) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] != null && columns[i].header == header) {
+                int column = i;
+                return () -> rows.cells(column);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Dati di una colonna: valore e tag di tipo per ogni riga. Alla fine
+     * della lettura, se il tipo dedotto per la colonna lo consente, i valori
+     * passano in un array primitivo e le stringhe vengono rilasciate.
+     */
+    private static class Column {
+
+        private final Header header;
+        private String[] values;
+        private byte[] tags;
+        // Memorizzazione primitiva, alternativa a values: i numeri come interi
+        // scalati di 10^scale, in int[] se rientrano altrimenti in long[]
+        private int[] ints;
+        private long[] longs;
+        private int scale;
+        // Date in ISO-8601 memorizzate in ints come giorni dal 1970-01-01
+        private boolean epochDays;
+        private BitSet booleans;
+        private boolean forcedQuotations;
+
+        Column(Header header, int capacity) {
+            this.header = header;
+            this.values = new String[capacity];
+            this.tags = new byte[capacity];
+        }
+
+        void set(int row, DataCell cell) {
+            if (row >= values.length) {
+                int capacity = Math.max(row + 1, values.length + (values.length >> 1));
+                values = Arrays.copyOf(values, capacity);
+                tags = Arrays.copyOf(tags, capacity);
+            }
+            values[row] = cell.getValue();
+            tags[row] = (byte) ((cell.getCellType().ordinal() + 1) | (cell.isDateFormatted() ? DATE_FLAG : 0));
+        }
+
+        void trim(int rowCount) {
+            if (values.length != rowCount) {
+                values = Arrays.copyOf(values, rowCount);
+                tags = Arrays.copyOf(tags, rowCount);
+            }
+        }
+
+        /**
+         * Converte i valori nella memorizzazione primitiva del tipo della
+         * colonna. La conversione avviene solo se ogni valore si riottiene
+         * identico dal numero memorizzato; altrimenti la colonna resta di
+         * stringhe.
+         */
+        void compact() {
+            forcedQuotations = header.isForcedQuotations();
+            switch (header.getFieldType()) {
+                case INTEGER:
+                case DECIMAL:
+                    compactNumbers();
+                    break;
+                case DATE:
+                    compactDates();
+                    break;
+                case BOOLEAN:
+                    compactBooleans();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void compactNumbers() {
+            int maxScale = 0;
+            for (int row = 0; row < values.length; row++) {
+                if (isStoredAsNumber(row)) {
+                    int dot = values[row].indexOf('.');
+                    maxScale = Math.max(maxScale, dot < 0 ? 0 : values[row].length() - dot - 1);
+                }
+            }
+            if (maxScale > MAX_SCALE) {
+                return;
+            }
+            long[] parsed = new long[values.length];
+            boolean fitsInt = true;
+            for (int row = 0; row < values.length; row++) {
+                if (isStoredAsNumber(row)) {
+                    Long number = parseScaled(values[row], maxScale);
+                    if (number == null || !formatScaled(number, maxScale).equals(values[row])) {
+                        return;
+                    }
+                    parsed[row] = number;
+                    fitsInt &= number == (int) (long) number;
+                } else if (!isEmpty(row)) {
+                    return;
+                }
+            }
+            if (fitsInt) {
+                ints = new int[parsed.length];
+                for (int row = 0; row < parsed.length; row++) {
+                    ints[row] = (int) parsed[row];
+                }
+            } else {
+                longs = parsed;
+            }
+            scale = maxScale;
+            values = null;
+        }
+
+        private void compactDates() {
+            int[] parsed = new int[values.length];
+            for (int row = 0; row < values.length; row++) {
+                if (tags[row] == ((CellType.NUMERIC.ordinal() + 1) | DATE_FLAG)) {
+                    LocalDate date;
+                    try {
+                        date = LocalDate.parse(values[row]);
+                    } catch (DateTimeParseException e) {
+                        return;
+                    }
+                    if (!date.toString().equals(values[row])) {
+                        return;
+                    }
+                    parsed[row] = (int) date.toEpochDay();
+                } else if (!isEmpty(row)) {
+                    return;
+                }
+            }
+            ints = parsed;
+            epochDays = true;
+            values = null;
+        }
+
+        private void compactBooleans() {
+            BitSet parsed = new BitSet(values.length);
+            for (int row = 0; row < values.length; row++) {
+                if (tags[row] == CellType.BOOLEAN.ordinal() + 1 && ("TRUE".equals(values[row]) || "FALSE".equals(values[row]))) {
+                    parsed.set(row, "TRUE".equals(values[row]));
+                } else if (!isEmpty(row)) {
+                    return;
+                }
+            }
+            booleans = parsed;
+            values = null;
+        }
+
+        private boolean isStoredAsNumber(int row) {
+            return tags[row] == CellType.NUMERIC.ordinal() + 1;
+        }
+
+        // Assente, oppure cella vuota senza testo: non serve memorizzare nulla
+        private boolean isEmpty(int row) {
+            return tags[row] == ABSENT || (cellType(tags[row]) == CellType.BLANK && "".equals(values[row]));
+        }
+
+        /**
+         * Valore testuale della riga, ricostruito dalla memorizzazione in uso.
+         */
+        private String value(int row) {
+            if (values != null) {
+                return values[row];
+            }
+            if (cellType(tags[row]) == CellType.BLANK) {
+                return "";
+            }
+            if (epochDays) {
+                return LocalDate.ofEpochDay(ints[row]).toString();
+            }
+            if (ints != null) {
+                return formatScaled(ints[row], scale);
+            }
+            if (longs != null) {
+                return formatScaled(longs[row], scale);
+            }
+            return booleans.get(row) ? "TRUE" : "FALSE";
+        }
+
+        boolean isPresent(int row) {
+            return row < tags.length && tags[row] != ABSENT;
+        }
+
+        /**
+         * Nuova cella della riga indicata, oppure null se assente.
+         */
+        DataCell cell(int row) {
+            if (!isPresent(row)) {
+                return null;
+            }
+            byte tag = tags[row];
+            if (values != null) {
+                return new DataCell(header, cellType(tag), (tag & DATE_FLAG) != 0, values[row]);
+            }
+            return new PrimitiveCell(this, cellType(tag), (tag & DATE_FLAG) != 0, value(row));
+        }
+
+        /**
+         * Valore serializzato di una cella della memorizzazione primitiva:
+         * interi e booleani così come sono, decimali e date tra virgolette,
+         * come farebbe {@link DataCell} analizzando il testo.
+         */
+        String literal(String value) {
+            if (value.isEmpty()) {
+                return "";
+            }
+            boolean bare = booleans != null || (!epochDays && value.indexOf('.') < 0);
+            return bare && !forcedQuotations ? value : '"' + value + '"';
+        }
+    }
+
+    /**
+     * Cella di una colonna in memorizzazione primitiva, il cui testo è già
+     * in forma canonica.
+     */
+    private static class PrimitiveCell extends DataCell {
+
+        private final Column column;
+
+        PrimitiveCell(Column column, CellType cellType, boolean dateFormatted, String value) {
+            super(column.header, cellType, dateFormatted, value);
+            this.column = column;
+        }
+
+        @Override
+        String formatValue() {
+            return column.literal(getValue());
+        }
+    }
+
+    private static CellType cellType(byte tag) {
+        return CELL_TYPES[(tag & ~DATE_FLAG) - 1];
+    }
+
+    /**
+     * Numero scritto con solo cifre, segno e punto decimale, come intero
+     * scalato di 10^scale; null per qualsiasi altro testo o se non rientra in
+     * un long.
+     */
+    private static Long parseScaled(String value, int scale) {
+        int dot = value.indexOf('.');
+        String digits = dot < 0 ? value : value.substring(0, dot) + value.substring(dot + 1);
+        int decimals = dot < 0 ? 0 : value.length() - dot - 1;
+        try {
+            long number = Long.parseLong(digits);
+            for (int i = decimals; i < scale; i++) {
+                number = Math.multiplyExact(number, 10);
+            }
+            return number;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Testo di un intero scalato, senza zeri finali nella parte decimale:
+     * la forma in cui il reader scrive i numeri.
+     */
+    private static String formatScaled(long number, int scale) {
+        String text = Long.toString(number);
+        if (scale == 0) {
+            return text;
+        }
+        boolean negative = number < 0;
+        StringBuilder digits = new StringBuilder(text.length() + scale + 2).append(text, negative ? 1 : 0, text.length());
+        while (digits.length() <= scale) {
+            digits.insert(0, '0');
+        }
+        int point = digits.length() - scale;
+        int end = digits.length();
+        while (end > point && digits.charAt(end - 1) == '0') {
+            end--;
+        }
+        digits.setLength(end);
+        if (end > point) {
+            digits.insert(point, '.');
+        }
+        return negative ? "-" + digits : digits.toString();
+    }
+
+    /**
+     * Vista a lista sulle righe: il primo accesso costruisce la riga con le
+     * celle presenti, ciascuna nella posizione della sua colonna. La riga
+     * resta associata al suo indice tramite un riferimento debole, così gli
+     * accessi successivi restituiscono la stessa istanza finché qualcuno la
+     * usa, senza trattenere in memoria le righe già elaborate.
+     */
+    private static class RowList extends AbstractList<DataRow> implements RandomAccess {
+
+        private final Column[] columns;
+        private final int[] rowNumbers;
+        private final int rowCount;
+        private final RowReference[] built;
+        private final ReferenceQueue<DataRow> released = new ReferenceQueue<>();
+
+        RowList(Column[] columns, int[] rowNumbers, int rowCount) {
+            this.columns = columns;
+            this.rowNumbers = rowNumbers;
+            this.rowCount = rowCount;
+            this.built = new RowReference[rowCount];
+        }
+
+        @Override
+        public synchronized DataRow get(int index) {
+            if (index < 0 || index >= rowCount) {
+                throw new IndexOutOfBoundsException("Riga " + index + " non presente (righe: " + rowCount + ")");
+            }
+            DataRow row = built(index);
+            if (row == null) {
+                DataCell[] cells = new DataCell[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    cells[i] = columns[i] != null ? columns[i].cell(index) : null;
+                }
+                row = new DataRow(cells, rowNumbers[index]);
+                built[index] = new RowReference(row, index, released);
+            }
+            return row;
+        }
+
+        // Riga già costruita e ancora in uso, altrimenti null
+        private synchronized DataRow built(int index) {
+            Reference<? extends DataRow> cleared;
+            while ((cleared = released.poll()) != null) {
+                RowReference reference = (RowReference) cleared;
+                if (built[reference.index] == reference) {
+                    built[reference.index] = null;
+                }
+            }
+            RowReference reference = built[index];
+            return reference != null ? reference.get() : null;
+        }
+
+        /**
+         * Celle presenti di una colonna: quelle delle righe in uso, per le
+         * altre una cella costruita dai dati della colonna.
+         */
+        Iterator<DataCell> cells(int column) {
+            Column data = columns[column];
+            return new Iterator<DataCell>() {
+                private int row = nextPresent(0);
+
+                private int nextPresent(int from) {
+                    while (from < rowCount && !data.isPresent(from)) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return row < rowCount;
+                }
+
+                @Override
+                public DataCell next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    DataRow live = built(row);
+                    DataCell cell = live != null ? live.get(column) : data.cell(row);
+                    row = nextPresent(row + 1);
+                    return cell;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+
+    private static class RowReference extends WeakReference<DataRow> {
+
+        private final int index;
+
+        RowReference(DataRow row, int index, ReferenceQueue<DataRow> queue) {
+            super(row, queue);
+            this.index = index;
+        }
+    }
+
+    /**
+     * Raccoglie le celle riga per riga, indicando per ciascuna la colonna di
+     * appartenenza, e costruisce il foglio a colonne.
+     */
+    public static class Builder {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private final List<Column> columns = new ArrayList<>();
+        private int[] rowNumbers = new int[INITIAL_CAPACITY];
+        private int rowCount = 0;
+
+        /**
+         * Aggiunge una cella alla riga corrente.
+         */
+        public void cell(int column, DataCell cell) {
+            while (columns.size() <= column) {
+                columns.add(null);
+            }
+            Column data = columns.get(column);
+            if (data == null) {
+                data = new Column(cell.getHeader(), Math.max(INITIAL_CAPACITY, rowCount + 1));
+                columns.set(column, data);
+            }
+            data.set(rowCount, cell);
+        }
+
+        /**
+         * Chiude la riga corrente, indicandone il numero nel foglio di
+         * origine.
+         */
+        public void endRow(int rowNumber) {
+            if (rowCount == rowNumbers.length) {
+                rowNumbers = Arrays.copyOf(rowNumbers, rowCount + (rowCount >> 1));
+            }
+            rowNumbers[rowCount++] = rowNumber;
+        }
+
+        /**
+         * Restituisce il foglio, riducendo le colonne alla dimensione
+         * effettiva e convertendo in array primitivi quelle che lo
+         * consentono.
+         */
+        public ColumnarDataSheet build(String name, List<Header> headers) {
+            Column[] result = columns.toArray(new Column[0]);
+            for (Column column : result) {
+                if (column != null) {
+                    column.trim(rowCount);
+                    column.compact();
+                }
+            }
+            return new ColumnarDataSheet(name, headers, result, new RowList(result, Arrays.copyOf(rowNumbers, rowCount), rowCount));
+        }
+    }
+}
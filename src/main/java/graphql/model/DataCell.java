@@ -16,16 +16,29 @@ import org.apache.poi.ss.usermodel.DateUtil;
 public class DataCell {
 
     private final Header header;
-    private final Cell cell;
+    private final CellType cellType;
+    private final boolean dateFormatted;
     private final String value;
+    // Valore serializzato, calcolato alla prima richiesta: dipende solo da dati immutabili
+    private String formattedValue;
 
     /**
      * Costruisce la cella legandola alla relativa intestazione e al valore
-     * grezzo estratto dal foglio Excel.
+     * grezzo estratto dal foglio Excel. Tipo e formato data vengono rilevati
+     * alla lettura, così la cella non mantiene riferimenti al workbook.
      */
     public DataCell(Header header, Cell cell, String value) {
+        this(header, cell.getCellType(), isNumericDate(cell), value);
+    }
+
+    /**
+     * Costruisce la cella a partire dal tipo già noto: usato dai reader in
+     * streaming che non materializzano le celle del workbook.
+     */
+    public DataCell(Header header, CellType cellType, boolean dateFormatted, String value) {
         this.header = Objects.requireNonNull(header, "header");
-        this.cell = cell;
+        this.cellType = Objects.requireNonNull(cellType, "cellType");
+        this.dateFormatted = dateFormatted;
         this.value = value;
     }
 
@@ -43,23 +56,70 @@ public class DataCell {
         return value;
     }
 
+    // Il formato data è rilevante, e leggibile da POI, solo per le celle numeriche
+    private static boolean isNumericDate(Cell cell) {
+        return cell.getCellType() == CellType.NUMERIC && DateUtil.isCellDateFormatted(cell);
+    }
+
+    CellType getCellType() {
+        return cellType;
+    }
+
+    boolean isDateFormatted() {
+        return dateFormatted;
+    }
+
     /**
      * Controlla se il valore numerico può essere rappresentato come intero
      * senza perdita di informazioni.
      */
-    private boolean isInteger() {
-        if (!Utils.isBlank(value) && cell.getCellType() == CellType.NUMERIC && !DateUtil.isCellDateFormatted(cell)) {
-            BigDecimal bd = new BigDecimal(value);
-            return bd.setScale(0).compareTo(bd) == 0;
+    boolean isInteger() {
+        if (!Utils.isBlank(value) && getCellType() == CellType.NUMERIC && !isDateFormatted()) {
+            return isPlainInteger(value) || integerValue(value) != null;
         }
         return false;
     }
 
+    // Solo cifre, con segno facoltativo: il caso più comune, verificato senza allocazioni
+    private static boolean isPlainInteger(String text) {
+        int start = text.charAt(0) == '-' ? 1 : 0;
+        if (start == text.length()) {
+            return false;
+        }
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Valore intero in forma canonica (es. "3.00" -> "3"), null se il testo
+     * non è un numero o ha una parte decimale.
+     */
+    private static String integerValue(String text) {
+        try {
+            BigDecimal bd = new BigDecimal(text).stripTrailingZeros();
+            return bd.scale() <= 0 ? bd.toPlainString() : null;
+        } catch (NumberFormatException e) {
+            // Numero formattato dal foglio (es. separatori delle migliaia): resta una stringa
+            return null;
+        }
+    }
+
+    // Un intero di sole cifre è già canonico se non ha zeri iniziali
+    private static boolean isCanonicalInteger(String text) {
+        int start = text.charAt(0) == '-' ? 1 : 0;
+        return text.charAt(start) != '0' || text.length() == 1;
+    }
+
     /**
      * Verifica se la cella è di tipo booleano nativo in Excel.
      */
     private boolean isBoolean() {
-        return cell.getCellType() == CellType.BOOLEAN;
+        return getCellType() == CellType.BOOLEAN;
     }
 
     /**
@@ -73,26 +133,40 @@ public class DataCell {
     /**
      * Restituisce il valore serializzato come stringa pronta per essere
      * inserita nella mutation, gestendo virgolette, numeri e campi vuoti.
+     * Il risultato viene calcolato una sola volta per cella.
      */
     public String getFormattedValue() {
-        String formattedValue = value;
-        if (isInteger()) {
-            formattedValue = new BigDecimal(value).stripTrailingZeros().toPlainString();
+        String formatted = formattedValue;
+        if (formatted == null) {
+            formatted = formatValue();
+            formattedValue = formatted;
         }
-        if (quotationMarksNeeded()) {
-            formattedValue = "\"" + JsonUtils.escapeJsonString(formattedValue) + "\"";
+        return formatted;
+    }
+
+    /**
+     * Calcola il valore serializzato, senza memorizzarlo.
+     */
+    String formatValue() {
+        if (isBlank()) {
+            return "";
+        }
+        boolean integer = isInteger();
+        String formatted = value;
+        if (integer && !(isPlainInteger(value) && isCanonicalInteger(value))) {
+            formatted = integerValue(value);
         }
-        if (isBlank()) {
-            formattedValue = "";
+        if (header.isForcedQuotations() || (!integer && !isBoolean())) {
+            formatted = "\"" + JsonUtils.escapeJsonString(formatted) + "\"";
         }
-        return formattedValue;
+        return formatted;
     }
 
     /**
      * Indica se la cella non contiene alcun dato significativo.
      */
     public boolean isBlank() {
-        return cell.getCellType() == CellType.BLANK || Utils.isBlank(value);
+        return getCellType() == CellType.BLANK || Utils.isBlank(value);
     }
 
 }
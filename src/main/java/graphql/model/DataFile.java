@@ -1,5 +1,7 @@
 package graphql.model;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -7,17 +9,30 @@ import java.util.stream.Collectors;
 /**
  * Rappresenta l'intero file Excel, mantenendo l'elenco dei fogli e
  * fornendo utilità per individuare eventuali schede di mapping.
+ * <p>
+ * Se i fogli sono in streaming il file sorgente resta aperto finché non
+ * viene invocato {@link #close()}.
  */
-public class DataFile {
+public class DataFile implements Closeable {
 
     private final List<DataSheet> dataSheets;
+    private final Closeable resource;
     public static final String MAPPING_SHEET_NAME = "_mapping";
 
     /**
      * Inizializza il contenitore dei fogli letti dal workbook Excel.
      */
     public DataFile(List<DataSheet> dataSheets) {
+        this(dataSheets, null);
+    }
+
+    /**
+     * Inizializza il contenitore legandolo alla risorsa da cui i fogli in
+     * streaming continuano a leggere.
+     */
+    public DataFile(List<DataSheet> dataSheets, Closeable resource) {
         this.dataSheets = Objects.requireNonNull(dataSheets, "dataSheets");
+        this.resource = resource;
     }
 
     /**
@@ -41,4 +56,15 @@ public class DataFile {
             return null;
         }
     }
+
+    /**
+     * Rilascia l'eventuale file sorgente ancora aperto e interrompe le
+     * letture in streaming non completate.
+     */
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        }
+    }
 }
@@ -1,46 +1,119 @@
 package graphql.model;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 /**
- * Modello immutabile che rappresenta una riga di dati, mantenendo sia
- * l'ordine originale delle celle sia una mappatura rapida per accedervi
- * tramite l'intestazione.
+ * Modello immutabile che rappresenta una riga di dati. Le celle sono
+ * conservate in un array indicizzato per colonna, con null per le celle
+ * vuote, così l'accesso tramite l'intestazione non richiede una mappa per
+ * ogni riga. Conserva il numero della riga nel foglio di origine, da usare
+ * nelle segnalazioni di errore.
  */
 public class DataRow {
 
-    private final List<DataCell> dataCells;
-    private final Map<Header, DataCell> header2cell = new LinkedHashMap();
+    private final DataCell[] cells;
+    private final int cellCount;
+    private final int rowNumber;
 
+    /**
+     * Costruisce la riga posizionando ogni cella nella colonna della sua
+     * intestazione, senza numero di riga di origine.
+     */
+    public DataRow(List<DataCell> dataCells) {
+        this(dataCells, 0);
+    }
+
+    /**
+     * Costruisce la riga posizionando ogni cella nella colonna della sua
+     * intestazione.
+     *
+     * @param rowNumber numero della riga nel foglio di origine, a partire da 1
+     */
+    public DataRow(List<DataCell> dataCells, int rowNumber) {
+        Objects.requireNonNull(dataCells, "dataCells");
+        int size = 0;
+        for (DataCell cell : dataCells) {
+            size = Math.max(size, columnOf(cell) + 1);
+        }
+        this.cells = new DataCell[size];
+        for (DataCell cell : dataCells) {
+            cells[columnOf(cell)] = cell;
+        }
+        this.cellCount = dataCells.size();
+        this.rowNumber = rowNumber;
+    }
+
+    /**
+     * Costruisce la riga da un array già indicizzato per colonna, che non
+     * viene copiato.
+     */
+    DataRow(DataCell[] cells, int rowNumber) {
+        this.cells = cells;
+        this.rowNumber = rowNumber;
+        int count = 0;
+        for (DataCell cell : cells) {
+            if (cell != null) {
+                count++;
+            }
+        }
+        this.cellCount = count;
+    }
+
+    private static int columnOf(DataCell cell) {
+        int index = cell.getHeader().getIndex();
+        if (index < 0) {
+            throw new IllegalArgumentException("L'intestazione '" + cell.getHeader().getValue() + "' non ha un indice di colonna");
+        }
+        return index;
+    }
+
     /**
-     * Costruisce la riga e prepara la mappa di lookup per le celle.
+     * Numero della riga nel foglio di origine come lo mostra il programma di
+     * origine (la riga di intestazione è di solito la 1), oppure 0 se la riga
+     * non proviene da un file.
      */
-    public DataRow(List<DataCell> dataCells) {
-        this.dataCells = Objects.requireNonNull(dataCells, "dataCells");
-        dataCells.forEach(c -> header2cell.put(c.getHeader(), c));
+    public int getRowNumber() {
+        return rowNumber;
     }
 
     /**
      * Restituisce l'elenco ordinato delle celle presenti nella riga.
      */
     public List<DataCell> getDataCells() {
-        return dataCells;
+        if (cellCount == cells.length) {
+            return Collections.unmodifiableList(Arrays.asList(cells));
+        }
+        List<DataCell> present = new ArrayList<>(cellCount);
+        for (DataCell cell : cells) {
+            if (cell != null) {
+                present.add(cell);
+            }
+        }
+        return Collections.unmodifiableList(present);
     }
 
     /**
      * Recupera la cella associata a una specifica intestazione.
      */
     public DataCell get(Header header) {
-        return header2cell.get(header);
+        int index = header.getIndex();
+        if (index < 0 || index >= cells.length) {
+            return null;
+        }
+        DataCell cell = cells[index];
+        // Intestazioni di altri fogli possono avere lo stesso indice
+        return cell != null && cell.getHeader() == header ? cell : null;
     }
 
     /**
-     * Recupera la cella in base all'indice originale nel foglio.
+     * Recupera la cella in base all'indice originale nel foglio, null se la
+     * cella è vuota.
      */
     public DataCell get(int index) {
-        return dataCells.get(index);
+        return index < cells.length ? cells[index] : null;
     }
 }
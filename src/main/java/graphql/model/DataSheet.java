@@ -1,8 +1,14 @@
 package graphql.model;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Modello che incapsula un foglio del file Excel, con nome, intestazioni e
@@ -11,8 +17,10 @@ import java.util.stream.Collectors;
 public class DataSheet {
 
     private String name;
-    private final List<Header> headers;
-    private final List<DataRow> dataRows;
+    private List<Header> headers;
+    private List<DataRow> dataRows;
+    private RowSource rowSource;
+    private SheetSchema schema;
 
     private static final String COMPOSITION_PREFIX = "#";
 
@@ -26,6 +34,15 @@ public class DataSheet {
         this.dataRows = Objects.requireNonNull(dataRows, "dataRows");
     }
 
+    /**
+     * Crea un foglio le cui righe vengono fornite su richiesta dalla
+     * sorgente, man mano che il reader le decodifica.
+     */
+    public DataSheet(String name, RowSource rowSource) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.rowSource = Objects.requireNonNull(rowSource, "rowSource");
+    }
+
     /**
      * Nome originale del foglio, comprensivo di eventuale prefisso per le
      * composizioni.
@@ -46,16 +63,83 @@ public class DataSheet {
      * Restituisce la lista di intestazioni in ordine di apparizione.
      */
     public List<Header> getHeaders() {
+        if (headers == null) {
+            headers = rowSource.headers();
+        }
         return headers;
     }
 
     /**
-     * Restituisce le righe lette dal foglio.
+     * Schema compilato dalle intestazioni, creato al primo utilizzo.
+     */
+    public SheetSchema getSchema() {
+        if (schema == null) {
+            schema = new SheetSchema(getHeaders());
+        }
+        return schema;
+    }
+
+    /**
+     * Restituisce le righe lette dal foglio. Per i fogli in streaming
+     * comporta la lettura completa delle righe rimanenti, che da quel momento
+     * restano in memoria.
      */
     public List<DataRow> getDataRows() {
+        if (dataRows == null) {
+            List<DataRow> rows = new ArrayList<>();
+            rowSource.iterator().forEachRemaining(rows::add);
+            dataRows = rows;
+            rowSource = null;
+        }
         return dataRows;
     }
 
+    /**
+     * Indica se le righe arrivano in streaming e non sono ancora state
+     * materializzate.
+     */
+    public boolean isStreamed() {
+        return dataRows == null;
+    }
+
+    /**
+     * Iteratore sulle righe nell'ordine del foglio. Per i fogli in streaming
+     * le righe vengono prelevate dal reader man mano e l'iterazione è
+     * possibile una sola volta.
+     */
+    public Iterator<DataRow> rows() {
+        return dataRows != null ? dataRows.iterator() : rowSource.iterator();
+    }
+
+    /**
+     * Spliterator ordinato sulle righe, con le stesse regole di
+     * {@link #rows()}.
+     */
+    public Spliterator<DataRow> spliterator() {
+        return dataRows != null
+                ? dataRows.spliterator()
+                : Spliterators.spliteratorUnknownSize(rowSource.iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Stream sequenziale sulle righe, con le stesse regole di {@link #rows()}.
+     */
+    public Stream<DataRow> rowStream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Celle presenti nella colonna indicata, nell'ordine delle righe. Per i
+     * fogli in streaming comporta la lettura completa come
+     * {@link #getDataRows()}.
+     */
+    public Iterable<DataCell> cells(Header header) {
+        return () -> getDataRows().stream()
+                .map(row -> row.get(header))
+                .filter(Objects::nonNull)
+                .iterator();
+    }
+
     /**
      * Indica se il foglio rappresenta una composizione (prefisso '#').
      */
@@ -74,6 +158,6 @@ public class DataSheet {
      * Restituisce solo le intestazioni che rappresentano riferimenti esterni.
      */
     public List<Header> externalHeaders() {
-        return headers.stream().filter(Header::isReference).collect(Collectors.toList());
+        return getHeaders().stream().filter(Header::isReference).collect(Collectors.toList());
     }
 }
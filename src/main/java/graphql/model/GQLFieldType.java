@@ -0,0 +1,52 @@
+package graphql.model;
+
+/**
+ * Tipo dei valori di una colonna, dedotto dalle celle lette: determina come
+ * i valori vengono memorizzati e serializzati nella mutation.
+ */
+public enum GQLFieldType {
+    STRING,
+    DECIMAL,
+    DATE,
+    INTEGER,
+    BOOLEAN,
+    ID; // Riferimento a un oggetto esterno, risolto tramite il suo ID
+
+    /**
+     * Tipo del valore di una singola cella, null per le celle vuote che non
+     * danno informazioni sulla colonna.
+     */
+    static GQLFieldType of(DataCell cell) {
+        if (cell.isBlank()) {
+            return null;
+        }
+        switch (cell.getCellType()) {
+            case NUMERIC:
+                if (cell.isDateFormatted()) {
+                    return DATE;
+                }
+                return cell.isInteger() ? INTEGER : DECIMAL;
+            case BOOLEAN:
+                return BOOLEAN;
+            default:
+                return STRING;
+        }
+    }
+
+    /**
+     * Tipo che comprende entrambi: interi e decimali diventano decimali,
+     * qualsiasi altra combinazione diventa testo.
+     */
+    static GQLFieldType widen(GQLFieldType current, GQLFieldType next) {
+        if (current == null || current == next) {
+            return next;
+        }
+        if (next == null) {
+            return current;
+        }
+        if ((current == INTEGER && next == DECIMAL) || (current == DECIMAL && next == INTEGER)) {
+            return DECIMAL;
+        }
+        return STRING;
+    }
+}
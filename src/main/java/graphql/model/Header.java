@@ -10,16 +10,29 @@ public class Header {
     private static final String FORCE_QUOTATION_PREFIX = "§";
     private static final String EXT_REF_PREFIX = "*";
     private final String header;
+    // Posizione della colonna nel foglio, -1 se l'intestazione non appartiene a un foglio
+    private final int index;
 
     // Flag derivato dall'analisi dei valori: se anche un solo valore richiede virgolette, tutte le celle della colonna le useranno
     private boolean inferredQuotations = false;
 
+    // Tipo dei valori letti, allargato man mano che arrivano le celle
+    private GQLFieldType fieldType;
+
     /**
      * Inizializza l'intestazione rimuovendo l'eventuale prefisso di
      * riferimento esterno.
      */
     public Header(String header) {
+        this(header, -1);
+    }
+
+    /**
+     * Inizializza l'intestazione della colonna indicata del foglio.
+     */
+    public Header(String header, int index) {
         this.header = header.replace(EXT_REF_PREFIX, "");
+        this.index = index;
     }
 
     /**
@@ -30,6 +43,21 @@ public class Header {
         this.inferredQuotations = inferredQuotations;
     }
 
+    /**
+     * Aggiorna il tipo della colonna con quello della cella letta.
+     */
+    public void inferFieldType(DataCell cell) {
+        fieldType = GQLFieldType.widen(fieldType, GQLFieldType.of(cell));
+    }
+
+    /**
+     * Tipo dei valori della colonna dedotto durante la lettura; STRING se la
+     * colonna non ha valori.
+     */
+    public GQLFieldType getFieldType() {
+        return fieldType != null ? fieldType : GQLFieldType.STRING;
+    }
+
     /**
      * Restituisce il nome originale dell'intestazione.
      */
@@ -37,6 +65,14 @@ public class Header {
         return header;
     }
 
+    /**
+     * Indice della colonna nel foglio, stabile per tutte le righe: le celle
+     * di una {@link DataRow} sono posizionate in base a questo valore.
+     */
+    public int getIndex() {
+        return index;
+    }
+
     /**
      * Indica se la colonna fa riferimento a un'altra tabella (notazione
      * Classe.campo).
@@ -0,0 +1,23 @@
+package graphql.model;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sorgente di righe letta su richiesta: permette a un {@link DataSheet} di
+ * ricevere le righe man mano che il reader le decodifica, senza tenerle tutte
+ * in memoria.
+ */
+public interface RowSource {
+
+    /**
+     * Intestazioni del foglio; può attendere la decodifica della prima riga.
+     */
+    List<Header> headers();
+
+    /**
+     * Iteratore sulle righe di dati. La sorgente può essere percorsa una
+     * sola volta.
+     */
+    Iterator<DataRow> iterator();
+}
@@ -0,0 +1,282 @@
+package graphql.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Dipendenze tra i fogli di un file, ricavate dalle sole intestazioni: un
+ * foglio dipende dai fogli principali che creano le classi a cui fanno
+ * riferimento le sue colonne '*Classe.attributo'. Le composizioni dipendono
+ * anche dalla composizione precedente sulla stessa classe, così gli
+ * aggiornamenti dello stesso oggetto non si sovrappongono.
+ * <p>
+ * I fogli sono identificati dalla loro posizione nel file. Le dipendenze
+ * circolari non possono essere rispettate: vengono interrotte all'interno
+ * del ciclo, seguendo l'ordine del file, e riportate da
+ * {@link #getBrokenCycles()}.
+ */
+public class SheetDependencies {
+
+    private final List<SheetMetadata> sheets;
+    private final List<Set<Integer>> prerequisites = new ArrayList<>();
+    private final List<String> brokenCycles = new ArrayList<>();
+
+    public SheetDependencies(List<SheetMetadata> sheets) {
+        this.sheets = sheets;
+        Map<String, List<Integer>> class2creators = new HashMap<>();
+        for (int i = 0; i < sheets.size(); i++) {
+            if (!sheets.get(i).isComposition()) {
+                class2creators.computeIfAbsent(sheets.get(i).getName(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<String, Integer> parent2lastComposition = new HashMap<>();
+        for (int i = 0; i < sheets.size(); i++) {
+            SheetMetadata sheet = sheets.get(i);
+            Set<Integer> required = new TreeSet<>();
+            List<Header> references = sheet.externalHeaders();
+            for (Header header : references) {
+                for (int creator : class2creators.getOrDefault(header.getReferencedClassName(), Collections.emptyList())) {
+                    // I riferimenti alla propria classe riguardano oggetti già esistenti
+                    if (creator != i) {
+                        required.add(creator);
+                    }
+                }
+            }
+            if (sheet.isComposition() && !references.isEmpty()) {
+                Integer previous = parent2lastComposition.put(references.get(0).getReferencedClassName(), i);
+                if (previous != null) {
+                    required.add(previous);
+                }
+            }
+            prerequisites.add(required);
+        }
+        breakCycles();
+    }
+
+    /**
+     * Interrompe le dipendenze circolari: finché restano fogli senza un
+     * ordine possibile, il primo foglio nel file di un ciclo che non attende
+     * altri fogli perde le dipendenze verso gli altri fogli del ciclo. I
+     * fogli che dipendono dal ciclo senza farne parte restano invariati.
+     */
+    private void breakCycles() {
+        int[] pending = new int[sheets.size()];
+        List<List<Integer>> dependents = dependents();
+        TreeSet<Integer> ready = new TreeSet<>();
+        Set<Integer> remaining = new TreeSet<>();
+        for (int i = 0; i < sheets.size(); i++) {
+            pending[i] = prerequisites.get(i).size();
+            remaining.add(i);
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        while (!remaining.isEmpty()) {
+            if (ready.isEmpty()) {
+                TreeSet<Integer> cycle = blockingCycle(remaining);
+                int first = cycle.first();
+                List<String> dropped = new ArrayList<>();
+                for (Integer prerequisite : prerequisites.get(first)) {
+                    if (cycle.contains(prerequisite)) {
+                        dropped.add(sheets.get(prerequisite).getName());
+                        dependents.get(prerequisite).remove(Integer.valueOf(first));
+                    }
+                }
+                prerequisites.get(first).removeIf(cycle::contains);
+                brokenCycles.add("'" + sheets.get(first).getName() + "' importato prima di " + String.join(", ", dropped));
+                ready.add(first);
+            }
+            int next = ready.pollFirst();
+            remaining.remove(next);
+            for (int dependent : dependents.get(next)) {
+                if (--pending[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Primo ciclo, in ordine di file, tra i fogli ancora da ordinare i cui
+     * fogli dipendono solo da fogli dello stesso ciclo: esiste sempre quando
+     * nessuno di quei fogli è pronto.
+     */
+    private TreeSet<Integer> blockingCycle(Set<Integer> remaining) {
+        Map<Integer, Set<Integer>> reachable = new HashMap<>();
+        for (int i : remaining) {
+            reachable.put(i, reachable(i, remaining));
+        }
+        for (int i : remaining) {
+            // Il ciclo di un foglio: i fogli che raggiunge e da cui è raggiunto
+            TreeSet<Integer> cycle = new TreeSet<>();
+            for (int j : reachable.get(i)) {
+                if (reachable.get(j).contains(i)) {
+                    cycle.add(j);
+                }
+            }
+            if (!cycle.isEmpty() && closed(cycle, remaining)) {
+                return cycle;
+            }
+        }
+        throw new IllegalStateException("Nessun ciclo tra i fogli " + remaining);
+    }
+
+    // Fogli raggiungibili seguendo i prerequisiti, limitati a quelli indicati
+    private Set<Integer> reachable(int from, Set<Integer> among) {
+        Set<Integer> visited = new TreeSet<>();
+        List<Integer> toVisit = new ArrayList<>(prerequisites.get(from));
+        while (!toVisit.isEmpty()) {
+            int next = toVisit.remove(toVisit.size() - 1);
+            if (among.contains(next) && visited.add(next)) {
+                toVisit.addAll(prerequisites.get(next));
+            }
+        }
+        return visited;
+    }
+
+    // Indica se i fogli del ciclo non dipendono da altri fogli ancora da ordinare
+    private boolean closed(Set<Integer> cycle, Set<Integer> remaining) {
+        for (int i : cycle) {
+            for (int prerequisite : prerequisites.get(i)) {
+                if (remaining.contains(prerequisite) && !cycle.contains(prerequisite)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private List<List<Integer>> dependents() {
+        List<List<Integer>> dependents = new ArrayList<>();
+        for (int i = 0; i < sheets.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < sheets.size(); i++) {
+            for (int prerequisite : prerequisites.get(i)) {
+                dependents.get(prerequisite).add(i);
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Fogli da completare prima di importare il foglio in posizione
+     * {@code index}.
+     */
+    public Set<Integer> prerequisites(int index) {
+        return Collections.unmodifiableSet(prerequisites.get(index));
+    }
+
+    /**
+     * Dipendenze per l'importazione, una per foglio nell'ordine del file.
+     */
+    public List<Set<Integer>> forImport() {
+        return Collections.unmodifiableList(prerequisites);
+    }
+
+    /**
+     * Dipendenze per la cancellazione, inverse di quelle di importazione: un
+     * foglio viene cancellato solo dopo i fogli che lo referenziano. Le
+     * composizioni non cancellano nulla, ma i loro oggetti appartengono alla
+     * classe composta: i fogli delle classi che referenziano vengono quindi
+     * cancellati dopo quello della classe composta, se questo non crea un
+     * ciclo.
+     */
+    public List<Set<Integer>> forDelete() {
+        List<Set<Integer>> reversed = new ArrayList<>();
+        for (List<Integer> dependents : dependents()) {
+            reversed.add(new TreeSet<>(dependents));
+        }
+        for (int i = 0; i < sheets.size(); i++) {
+            List<Header> references = sheets.get(i).externalHeaders();
+            if (!sheets.get(i).isComposition() || references.isEmpty()) {
+                continue;
+            }
+            String parentClass = references.get(0).getReferencedClassName();
+            for (int parent : prerequisites.get(i)) {
+                if (!sheets.get(parent).getName().equals(parentClass)) {
+                    continue;
+                }
+                for (int referenced : prerequisites.get(i)) {
+                    if (referenced != parent && !sheets.get(referenced).isComposition()
+                            && !reaches(reversed, parent, referenced)) {
+                        reversed.get(referenced).add(parent);
+                    }
+                }
+            }
+        }
+        return reversed;
+    }
+
+    // Indica se il foglio from attende, anche indirettamente, il foglio target
+    private static boolean reaches(List<Set<Integer>> graph, int from, int target) {
+        Set<Integer> visited = new TreeSet<>();
+        List<Integer> toVisit = new ArrayList<>(graph.get(from));
+        while (!toVisit.isEmpty()) {
+            int next = toVisit.remove(toVisit.size() - 1);
+            if (next == target) {
+                return true;
+            }
+            if (visited.add(next)) {
+                toVisit.addAll(graph.get(next));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Dipendenze circolari interrotte, descritte per il log.
+     */
+    public List<String> getBrokenCycles() {
+        return Collections.unmodifiableList(brokenCycles);
+    }
+
+    /**
+     * Numero di fogli nella catena di dipendenze più lunga, cioè il minimo
+     * di passi successivi necessari anche con parallelismo illimitato.
+     */
+    public int criticalPathLength() {
+        int[] depth = new int[sheets.size()];
+        int longest = 0;
+        for (int i : topologicalOrder()) {
+            depth[i] = 1;
+            for (int prerequisite : prerequisites.get(i)) {
+                depth[i] = Math.max(depth[i], depth[prerequisite] + 1);
+            }
+            longest = Math.max(longest, depth[i]);
+        }
+        return longest;
+    }
+
+    /**
+     * Ordine sequenziale che rispetta le dipendenze, preferendo a parità di
+     * condizioni l'ordine del file.
+     */
+    public List<Integer> topologicalOrder() {
+        int[] pending = new int[sheets.size()];
+        List<List<Integer>> dependents = dependents();
+        TreeSet<Integer> ready = new TreeSet<>();
+        for (int i = 0; i < sheets.size(); i++) {
+            pending[i] = prerequisites.get(i).size();
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        List<Integer> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            int next = ready.pollFirst();
+            order.add(next);
+            for (int dependent : dependents.get(next)) {
+                if (--pending[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,73 @@
+package graphql.model;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Descrizione sintetica di un foglio ottenuta senza leggerne i dati: nome
+ * (già rinominato secondo "_mapping"), intestazioni e numero di righe di
+ * dati stimato dalla dimensione dichiarata nel file.
+ */
+public class SheetMetadata {
+
+    private static final String COMPOSITION_PREFIX = "#";
+
+    private String name;
+    private final List<Header> headers;
+    private final int rowCount;
+
+    /**
+     * @param rowCount righe di dati stimate, -1 se il formato non le dichiara
+     */
+    public SheetMetadata(String name, List<Header> headers, int rowCount) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.headers = Objects.requireNonNull(headers, "headers");
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Nome del foglio, comprensivo di eventuale prefisso per le composizioni.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Aggiorna il nome del foglio, utile quando si applicano mapping
+     * personalizzati.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Intestazioni del foglio in ordine di apparizione.
+     */
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Numero di righe di dati (intestazione esclusa) ricavato dall'area
+     * dichiarata dal foglio: può includere righe vuote ma formattate. Vale
+     * -1 se non disponibile, ad esempio per i CSV.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Indica se il foglio rappresenta una composizione (prefisso '#').
+     */
+    public boolean isComposition() {
+        return name.startsWith(COMPOSITION_PREFIX);
+    }
+
+    /**
+     * Restituisce solo le intestazioni che rappresentano riferimenti esterni.
+     */
+    public List<Header> externalHeaders() {
+        return headers.stream().filter(Header::isReference).collect(Collectors.toList());
+    }
+}
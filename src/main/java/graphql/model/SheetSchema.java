@@ -0,0 +1,117 @@
+package graphql.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schema di un foglio ricavato una sola volta dalle intestazioni: per ogni
+ * colonna conserva nome dell'attributo ed eventuale riferimento esterno
+ * (classe, attributo e ruolo), così l'elaborazione delle righe non deve più
+ * analizzare le stringhe delle intestazioni.
+ */
+public class SheetSchema {
+
+    private final List<Column> columns;
+    // Colonne oltre la riga di intestazione, compilate al primo utilizzo
+    private final Map<Header, Column> extraColumns = new IdentityHashMap<>();
+
+    /**
+     * Compila lo schema a partire dalle intestazioni in ordine di colonna.
+     */
+    public SheetSchema(List<Header> headers) {
+        List<Column> compiled = new ArrayList<>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            compiled.add(new Column(i, headers.get(i)));
+        }
+        this.columns = Collections.unmodifiableList(compiled);
+    }
+
+    /**
+     * Colonne nell'ordine del foglio.
+     */
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Colonna in base all'indice nel foglio.
+     */
+    public Column column(int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * Colonna associata all'intestazione, trovata tramite il suo indice. Le
+     * celle oltre la riga di intestazione hanno intestazioni non elencate nel
+     * foglio: vengono compilate al primo utilizzo.
+     */
+    public Column column(Header header) {
+        int index = header.getIndex();
+        if (index >= 0 && index < columns.size() && columns.get(index).header == header) {
+            return columns.get(index);
+        }
+        return extraColumns.computeIfAbsent(header, h -> new Column(h.getIndex(), h));
+    }
+
+    /**
+     * Informazioni di una colonna, calcolate alla creazione dello schema.
+     */
+    public static class Column {
+
+        private final int index;
+        private final Header header;
+        private final String attributeName;
+        private final boolean reference;
+        private final String referencedClassName;
+        private final String referencedAttributeName;
+        private final String referencedRoleName;
+
+        Column(int index, Header header) {
+            this.index = index;
+            this.header = header;
+            this.attributeName = header.getAttributeName();
+            this.reference = header.isReference();
+            this.referencedClassName = header.getReferencedClassName();
+            this.referencedAttributeName = header.getReferencedAttributeName();
+            this.referencedRoleName = header.getReferencedRoleName();
+        }
+
+        /**
+         * Posizione della colonna nel foglio.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Header getHeader() {
+            return header;
+        }
+
+        /**
+         * Nome dell'attributo nella mutation: il ruolo per i riferimenti,
+         * altrimenti l'intestazione senza prefissi.
+         */
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        public boolean isReference() {
+            return reference;
+        }
+
+        public String getReferencedClassName() {
+            return referencedClassName;
+        }
+
+        public String getReferencedAttributeName() {
+            return referencedAttributeName;
+        }
+
+        public String getReferencedRoleName() {
+            return referencedRoleName;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import graphql.model.DataCell;
 import graphql.model.DataRow;
 import graphql.model.DataSheet;
 import graphql.model.Header;
-import graphql.util.LoggerUI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +14,19 @@ import java.util.stream.Collectors;
 
 public class CompositionParser extends ExternalAttributeResolver implements MutationParser {
 
+    private static final MutationSink.ResponseHandler IGNORE_RESPONSE = response -> {
+    };
+
+    public CompositionParser() {
+    }
+
+    /**
+     * @param context stato condiviso con gli altri parser dell'importazione
+     */
+    public CompositionParser(ImportContext context) {
+        super(context);
+    }
+
     private void validateHeaders(DataSheet sheetData) {
         if (sheetData.getHeaders().isEmpty()) {
             throw new IllegalArgumentException("Il foglio di composizione '" + sheetData.getName() + "' deve avere delle intestazioni.");
@@ -27,6 +39,23 @@ public class CompositionParser extends ExternalAttributeResolver implements Muta
             GraphQLMutationBuilder mutationBuilder,
             GraphQLQueryBuilder queryBuilder,
             GraphQLService graphQLService) throws Exception {
+        List<String> mutations = new ArrayList<>();
+        parseAndEmitMutations(sheetData, mutationBuilder, queryBuilder, graphQLService, (mutation, handler) -> mutations.add(mutation));
+        return mutations;
+    }
+
+    /**
+     * Genera una mutation di aggiornamento del genitore per riga,
+     * consegnandole al sink una finestra di righe alla volta. Le risposte
+     * non vengono elaborate.
+     */
+    @Override
+    public void parseAndEmitMutations(
+            DataSheet sheetData,
+            GraphQLMutationBuilder mutationBuilder,
+            GraphQLQueryBuilder queryBuilder,
+            GraphQLService graphQLService,
+            MutationSink sink) throws Exception {
 
         validateHeaders(sheetData);
 
@@ -38,39 +67,38 @@ public class CompositionParser extends ExternalAttributeResolver implements Muta
                     "La composizione '" + sheetData.getName() + "' deve contenere un riferimento al whole (es. '*Parent.attribute').");
         }
 
-        resolveAllExternalAttributes(queryBuilder, graphQLService, sheetData);
-
         Header parentHeader = externalHeaders.get(0);
-
-        List<String> mutations = new ArrayList<>();
-
-        for (DataRow rowData : sheetData.getDataRows()) {
-
-            DataCell parentCell = rowData.get(parentHeader);
-            if (parentCell == null) {
-                LoggerUI.log("Errore: identificativo del genitore mancante nella riga " + (sheetData.getDataRows().indexOf(rowData) + 2) + " del foglio '"
-                        + sheetData.getName() + "'. Riga ignorata.");
-                continue;
-            }
-
-            String parentId = getResolvedId(parentCell);
-            if (parentId == null) {
-                LoggerUI.log("Errore: impossibile risolvere l'ID per il valore del genitore '" + parentCell + "' nella riga " + (sheetData.getDataRows().indexOf(rowData) + 2));
-                continue;
+        String parentClassName = sheetData.getSchema().column(parentHeader).getReferencedClassName();
+
+        for (List<DataRow> window : rowWindows(sheetData)) {
+            resolveExternalAttributes(queryBuilder, graphQLService, sheetData, window);
+
+            for (DataRow rowData : window) {
+                DataCell parentCell = rowData.get(parentHeader);
+                if (parentCell == null) {
+                    errors.add(sheetData.getName(), rowData.getRowNumber(), parentHeader.getValue(), "",
+                            "identificativo del genitore mancante, riga ignorata");
+                    continue;
+                }
+
+                String parentId = getResolvedId(parentCell);
+                if (parentId == null) {
+                    errors.add(sheetData.getName(), rowData.getRowNumber(), parentHeader.getValue(), parentCell.getValue(),
+                            "ID del genitore non trovato, riga ignorata");
+                    continue;
+                }
+
+                Map<String, String> compositionAttributes = buildCompositionAttributes(sheetData, rowData, parentHeader);
+
+                String mutation = mutationBuilder.buildCompositionUpdateMutation(
+                        parentClassName,
+                        parentId,
+                        sheetData.getCompositionRoleName(),
+                        compositionAttributes
+                );
+
+                sink.accept(mutation, IGNORE_RESPONSE);
             }
-
-            Map<String, String> compositionAttributes = buildCompositionAttributes(sheetData, rowData, parentHeader);
-
-            String mutation = mutationBuilder.buildCompositionUpdateMutation(
-                    parentHeader.getReferencedClassName(),
-                    parentId,
-                    sheetData.getCompositionRoleName(),
-                    compositionAttributes
-            );
-
-            mutations.add(mutation);
         }
-
-        return mutations;
     }
 }
@@ -0,0 +1,111 @@
+package graphql.parser;
+
+import graphql.util.LoggerUI;
+import graphql.util.Settings;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Problemi trovati nelle singole righe durante l'importazione, con foglio,
+ * riga, colonna, valore e motivo. Le segnalazioni vengono raccolte mentre i
+ * fogli sono elaborati e scritte una sola volta alla fine con {@link #log()},
+ * invece di una riga di log per ogni errore. La registrazione è
+ * thread-safe, perché fogli indipendenti possono essere importati insieme.
+ */
+public class ErrorReport {
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final int maxLogged = Settings.getInt(Settings.ERRORS_MAX_LOGGED, 1000);
+
+    /**
+     * Registra un problema su una cella.
+     *
+     * @param row numero della riga nel foglio di origine
+     */
+    public synchronized void add(String sheet, int row, String column, String value, String reason) {
+        entries.add(new Entry(sheet, row, column, value, reason));
+    }
+
+    /**
+     * Segnalazioni nell'ordine in cui sono state registrate.
+     */
+    public synchronized List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Scrive il resoconto nel log con un unico messaggio: il numero di
+     * errori e il dettaglio dei primi, fino al limite configurato.
+     */
+    public synchronized void log() {
+        if (entries.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder("Errori nelle righe: ").append(entries.size());
+        int shown = Math.min(entries.size(), maxLogged);
+        for (int i = 0; i < shown; i++) {
+            text.append('\n').append("  ").append(entries.get(i));
+        }
+        if (shown < entries.size()) {
+            text.append("\n  ... altri ").append(entries.size() - shown).append(" errori non mostrati");
+        }
+        LoggerUI.log(text);
+    }
+
+    /**
+     * Singola segnalazione.
+     */
+    public static class Entry {
+
+        private final String sheet;
+        private final int row;
+        private final String column;
+        private final String value;
+        private final String reason;
+
+        Entry(String sheet, int row, String column, String value, String reason) {
+            this.sheet = sheet;
+            this.row = row;
+            this.column = column;
+            this.value = value;
+            this.reason = reason;
+        }
+
+        public String getSheet() {
+            return sheet;
+        }
+
+        /**
+         * Numero della riga nel foglio di origine, 0 se non noto.
+         */
+        public int getRow() {
+            return row;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Foglio '" + sheet + "' riga " + row + ", colonna '" + column + "', valore '" + value + "': " + reason;
+        }
+    }
+}
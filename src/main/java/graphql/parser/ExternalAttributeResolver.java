@@ -7,8 +7,16 @@ import graphql.model.DataCell;
 import graphql.model.DataRow;
 import graphql.model.DataSheet;
 import graphql.model.Header;
+import graphql.model.SheetSchema;
+import graphql.util.Concurrency;
 import graphql.util.JsonUtils;
 import graphql.util.LoggerUI;
+import graphql.util.Settings;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -16,64 +24,207 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 public abstract class ExternalAttributeResolver {
 
     protected Map<Header, Map<String, String>> header2value2id = new LinkedHashMap();
 
+    // Valori già interrogati per ogni riferimento, così le finestre successive cercano solo i nuovi
+    private final Map<Header, Set<String>> header2queriedValues = new HashMap<>();
+
+    private static final int DEFAULT_LOOKUP_THREADS = 4;
+
+    private final int windowSize = Settings.getInt(Settings.READER_WINDOW, 1000);
+    private final int lookupThreads = Settings.getInt(Settings.LOOKUP_THREADS, DEFAULT_LOOKUP_THREADS);
+
+    // Problemi delle singole righe, riportati alla fine dell'importazione
+    protected final ErrorReport errors;
+    // ID già risolti da tutti i fogli dell'importazione
+    protected final ReferenceCache referenceCache;
+
+    protected ExternalAttributeResolver() {
+        this(new ImportContext());
+    }
+
+    protected ExternalAttributeResolver(ImportContext context) {
+        this.errors = context.getErrors();
+        this.referenceCache = context.getReferenceCache();
+    }
+
     protected Map<String, String> buildMainAttributes(DataSheet sheetData, DataRow rowData) {
         return buildCompositionAttributes(sheetData, rowData, null);
     }
 
+    /**
+     * Attributi della mutation per una riga. Nomi e riferimenti delle colonne
+     * arrivano dallo schema del foglio, compilato una sola volta; i
+     * riferimenti non risolti vengono omessi e segnalati nel resoconto degli
+     * errori con il numero di riga di origine.
+     */
     protected Map<String, String> buildCompositionAttributes(DataSheet sheetData, DataRow rowData, Header parentHeader) {
 
+        SheetSchema schema = sheetData.getSchema();
         Map<String, String> mutationAttributes = new LinkedHashMap<>();
         for (DataCell dataCell : rowData.getDataCells()) {
             if (dataCell.getHeader().equals(parentHeader) || dataCell.isBlank()) {
                 continue;
             }
-            if (dataCell.getHeader().isReference()) {
-                if (dataCell.isBlank()) {
-                    continue;
-                }
+            SheetSchema.Column column = schema.column(dataCell.getHeader());
+            if (column.isReference()) {
                 String resolvedId = getResolvedId(dataCell);
                 if (resolvedId == null) {
-                    LoggerUI.log("Errore: impossibile risolvere l'ID per il riferimento esterno '" + dataCell
-                            + "' nella colonna '" + dataCell.getHeader().getValue() + "' riga " + (sheetData.getDataRows().indexOf(rowData) + 2));
+                    errors.add(sheetData.getName(), rowData.getRowNumber(), dataCell.getHeader().getValue(), dataCell.getValue(),
+                            "ID del riferimento esterno non trovato, valore ignorato");
                     continue;
                 }
-                mutationAttributes.put(dataCell.getHeader().getAttributeName(), resolvedId);
+                mutationAttributes.put(column.getAttributeName(), resolvedId);
             } else {
-                mutationAttributes.put(dataCell.getHeader().getAttributeName(), dataCell.getFormattedValue());
+                mutationAttributes.put(column.getAttributeName(), dataCell.getFormattedValue());
             }
         }
         return mutationAttributes;
     }
 
-    protected void resolveAllExternalAttributes(
+    /**
+     * Suddivide le righe del foglio in finestre consecutive da elaborare una
+     * alla volta: per i fogli in streaming ogni finestra viene prelevata dal
+     * reader solo quando serve, per quelli già in memoria la finestra è
+     * l'intero foglio.
+     */
+    protected Iterable<List<DataRow>> rowWindows(DataSheet sheetData) {
+        if (!sheetData.isStreamed()) {
+            return Collections.singletonList(sheetData.getDataRows());
+        }
+        Iterator<DataRow> rows = sheetData.rows();
+        return () -> new Iterator<List<DataRow>>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public List<DataRow> next() {
+                List<DataRow> window = new ArrayList<>(windowSize);
+                while (window.size() < windowSize && rows.hasNext()) {
+                    window.add(rows.next());
+                }
+                return window;
+            }
+        };
+    }
+
+    /**
+     * Risolve gli ID dei riferimenti esterni presenti nelle righe indicate,
+     * interrogando il server solo per i valori non ancora cercati dal foglio
+     * e assenti dalla cache dell'importazione. Le ricerche di tutte le
+     * colonne vengono raggruppate in pochi documenti con alias, eseguiti in
+     * parallelo, e i risultati uniti nell'ordine delle colonne e dei
+     * documenti.
+     */
+    protected void resolveExternalAttributes(
             GraphQLQueryBuilder queryBuilder,
             GraphQLService graphQLService,
-            DataSheet sheetData) throws Exception {
+            DataSheet sheetData,
+            List<DataRow> rows) throws Exception {
+        List<Lookup> lookups = new ArrayList<>();
+        List<GraphQLQueryBuilder.Lookup> requests = new ArrayList<>();
         for (Header header : sheetData.externalHeaders()) {
-            Set<String> values = extractValuesForHeader(sheetData, header);
-            Map<String, String> values2id = getIds(queryBuilder, graphQLService, header.getReferencedClassName(), header.getReferencedAttributeName(), values);
-            header2value2id.put(header, values2id);
+            Set<String> queriedValues = header2queriedValues.computeIfAbsent(header, h -> new HashSet<>());
+            Map<String, String> formatted2value = extractValuesForHeader(sheetData, rows, header);
+            formatted2value.keySet().removeAll(queriedValues);
+            if (formatted2value.isEmpty()) {
+                continue;
+            }
+            queriedValues.addAll(formatted2value.keySet());
+            SheetSchema.Column column = sheetData.getSchema().column(header);
+            Lookup lookup = new Lookup(header, column.getReferencedClassName(), column.getReferencedAttributeName(), formatted2value);
+            Map<String, String> value2id = header2value2id.computeIfAbsent(header, h -> new LinkedHashMap<>());
+
+            Map<String, String> cached = referenceCache.lookup(graphQLService.primaryEndpoint, lookup.className, lookup.attributeName, formatted2value.keySet());
+            cached.forEach((formatted, id) -> value2id.put(formatted2value.get(formatted), id));
+            lookup.missing.removeAll(cached.keySet());
+            // I valori già cercati senza risultato da altre colonne o fogli non vengono richiesti di nuovo
+            lookup.missing.removeAll(referenceCache.unresolved(graphQLService.primaryEndpoint, lookup.className, lookup.attributeName, lookup.missing));
+            if (lookup.missing.isEmpty()) {
+                continue;
+            }
+            LoggerUI.log("Recupero degli ID per " + lookup.missing.size() + " valori...");
+            lookups.add(lookup);
+            requests.add(new GraphQLQueryBuilder.Lookup(lookup.className, lookup.attributeName, lookup.missing));
+        }
+        if (lookups.isEmpty()) {
+            return;
+        }
+
+        List<List<Map<String, String>>> batches = fetchIds(queryBuilder, graphQLService, requests, lookupThreads);
+        for (int i = 0; i < lookups.size(); i++) {
+            Lookup lookup = lookups.get(i);
+            Map<String, String> fetched = mergeBatches(batches.get(i));
+            header2value2id.get(lookup.header).putAll(fetched);
+            // La risposta riporta i valori come testo semplice, la cache usa quelli formattati
+            Map<String, String> formatted2id = new LinkedHashMap<>();
+            List<String> notFound = new ArrayList<>();
+            for (String formatted : lookup.missing) {
+                String id = fetched.get(lookup.formatted2value.get(formatted));
+                if (id != null) {
+                    formatted2id.put(formatted, id);
+                } else {
+                    notFound.add(formatted);
+                }
+            }
+            referenceCache.putAll(graphQLService.primaryEndpoint, lookup.className, lookup.attributeName, formatted2id);
+            referenceCache.putUnresolved(graphQLService.primaryEndpoint, lookup.className, lookup.attributeName, notFound);
+        }
+    }
+
+    /**
+     * Ricerca degli ID per una colonna di riferimenti: i valori cercati e
+     * quelli da chiedere al server.
+     */
+    private static class Lookup {
+
+        private final Header header;
+        private final String className;
+        private final String attributeName;
+        private final Map<String, String> formatted2value;
+        private final Set<String> missing;
+
+        Lookup(Header header, String className, String attributeName, Map<String, String> formatted2value) {
+            this.header = header;
+            this.className = className;
+            this.attributeName = attributeName;
+            this.formatted2value = formatted2value;
+            this.missing = new LinkedHashSet<>(formatted2value.keySet());
         }
     }
 
-    protected Set<String> extractValuesForHeader(DataSheet sheetData, Header header) {
-        Set<String> values = new LinkedHashSet<>();
-        for (DataRow row : sheetData.getDataRows()) {
+    /**
+     * Valori distinti della colonna nelle righe indicate, come mappa dal
+     * valore formattato per la query al valore della cella. Per i fogli già
+     * in memoria la finestra è l'intero foglio, quindi la colonna viene letta
+     * direttamente con {@link DataSheet#cells(Header)}.
+     */
+    protected Map<String, String> extractValuesForHeader(DataSheet sheetData, List<DataRow> rows, Header header) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (!sheetData.isStreamed()) {
+            for (DataCell cell : sheetData.cells(header)) {
+                values.put(cell.getFormattedValue(), cell.getValue());
+            }
+            return values;
+        }
+        for (DataRow row : rows) {
             DataCell cell = row.get(header);
             if (cell != null) {
-                values.add(cell.getFormattedValue());
+                values.put(cell.getFormattedValue(), cell.getValue());
             }
         }
         return values;
     }
 
     protected String getResolvedId(DataCell dataCell) {
-        return header2value2id.get(dataCell.getHeader()).get(dataCell.getValue());
+        Map<String, String> value2id = header2value2id.get(dataCell.getHeader());
+        return value2id != null ? value2id.get(dataCell.getValue()) : null;
     }
 
     public static Map<String, String> getIds(
@@ -84,13 +235,59 @@ public abstract class ExternalAttributeResolver {
             Set<String> valuesToQuery
     ) throws Exception {
 
-        List<String> batchedQueries = queryBuilder.buildGetIdQuery(objectName, attributeName, valuesToQuery);
         int size = valuesToQuery.size();
         LoggerUI.log("Recupero degli ID per " + size + " valori...");
+        int parallelism = Settings.getInt(Settings.LOOKUP_THREADS, DEFAULT_LOOKUP_THREADS);
+        List<GraphQLQueryBuilder.Lookup> requests = Collections.singletonList(new GraphQLQueryBuilder.Lookup(objectName, attributeName, valuesToQuery));
+        return mergeBatches(fetchIds(queryBuilder, graphQLService, requests, parallelism).get(0));
+    }
+
+    /**
+     * Esegue le ricerche pianificate in documenti con alias, con al massimo
+     * {@code parallelism} richieste contemporanee. Per ogni ricerca
+     * restituisce le risposte delle sue selezioni nell'ordine dei documenti.
+     * Il tempo di ogni risposta regola la dimensione dei documenti
+     * successivi.
+     */
+    private static List<List<Map<String, String>>> fetchIds(
+            GraphQLQueryBuilder queryBuilder,
+            GraphQLService graphQLService,
+            List<GraphQLQueryBuilder.Lookup> requests,
+            int parallelism) throws Exception {
+        List<GraphQLQueryBuilder.Document> documents = queryBuilder.buildGetIdDocuments(requests);
+        List<Callable<Map<String, Map<String, String>>>> tasks = new ArrayList<>(documents.size());
+        for (GraphQLQueryBuilder.Document document : documents) {
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                Map<String, Map<String, String>> alias2values = getIdsBatch(graphQLService, document.getQuery());
+                queryBuilder.recordLatency(document.size(), (System.nanoTime() - start) / 1_000_000);
+                return alias2values;
+            });
+        }
+        List<Map<String, Map<String, String>>> responses = Concurrency.invokeAll("graphql-lookup", tasks, parallelism);
+
+        List<List<Map<String, String>>> batches = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (int d = 0; d < documents.size(); d++) {
+            for (GraphQLQueryBuilder.Selection selection : documents.get(d).getSelections()) {
+                Map<String, String> value2id = responses.get(d).get(selection.getAlias());
+                batches.get(selection.getLookup()).add(value2id != null ? value2id : Collections.emptyMap());
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Unisce le risposte dei batch di una stessa colonna nell'ordine dato,
+     * segnalando i valori che compaiono con più ID.
+     */
+    private static Map<String, String> mergeBatches(List<Map<String, String>> batches) {
         Map<String, String> value2id = new LinkedHashMap<>();
         List<String> duplicati = new LinkedList<>();
-        for (String query : batchedQueries) {
-            getIdsBatch(graphQLService, query).forEach((k, v) -> {
+        for (Map<String, String> batch : batches) {
+            batch.forEach((k, v) -> {
                 String prev = value2id.put(k, v);
                 if (prev != null) {
                     duplicati.add(k);
@@ -103,7 +300,7 @@ public abstract class ExternalAttributeResolver {
         return value2id;
     }
 
-    private static Map<String, String> getIdsBatch(GraphQLService graphQLService, String query) throws Exception {
+    private static Map<String, Map<String, String>> getIdsBatch(GraphQLService graphQLService, String query) throws Exception {
         Optional<String> response;
 
         try {
@@ -115,9 +312,9 @@ public abstract class ExternalAttributeResolver {
         if (!response.isPresent()) {
             throw new RuntimeException("Nessuna risposta ricevuta dagli endpoint GraphQL.");
         }
-        Map<String, String> val2id;
+        Map<String, Map<String, String>> val2id;
         try {
-            val2id = JsonUtils.value2id(response.get());
+            val2id = JsonUtils.aliasedValue2id(response.get());
 
         } catch (RuntimeException e) {
             throw e;
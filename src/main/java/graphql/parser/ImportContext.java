@@ -0,0 +1,53 @@
+package graphql.parser;
+
+import graphql.util.Settings;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stato condiviso dai parser di una stessa importazione: il resoconto degli
+ * errori delle righe e la cache degli ID dei riferimenti esterni, salvata
+ * su disco se è configurata la cartella {@link Settings#LOOKUP_CACHE_DIR}.
+ */
+public class ImportContext {
+
+    private final ErrorReport errors = new ErrorReport();
+    private final ReferenceCache referenceCache = new ReferenceCache(createStore());
+
+    private static ReferenceStore createStore() {
+        String directory = Settings.get(Settings.LOOKUP_CACHE_DIR, null);
+        if (directory == null) {
+            return null;
+        }
+        long ttl = TimeUnit.HOURS.toMillis(Settings.getInt(Settings.LOOKUP_CACHE_TTL_HOURS, 24));
+        return new ReferenceStore(new File(directory), ttl);
+    }
+
+    /**
+     * Applica le invalidazioni richieste da {@link Settings#LOOKUP_CACHE_INVALIDATE}
+     * alla cache dell'endpoint, prima di risolvere i riferimenti.
+     */
+    public void invalidateConfigured(String endpoint) {
+        for (String className : Settings.get(Settings.LOOKUP_CACHE_INVALIDATE, "").split(",")) {
+            if (!className.trim().isEmpty()) {
+                referenceCache.invalidate(endpoint, className.trim());
+            }
+        }
+    }
+
+    public ErrorReport getErrors() {
+        return errors;
+    }
+
+    public ReferenceCache getReferenceCache() {
+        return referenceCache;
+    }
+
+    /**
+     * Scrive i resoconti di fine importazione.
+     */
+    public void log() {
+        referenceCache.log();
+        errors.log();
+    }
+}
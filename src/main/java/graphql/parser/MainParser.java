@@ -5,12 +5,36 @@ import graphql.graphql.GraphQLQueryBuilder;
 import graphql.graphql.GraphQLService;
 import graphql.model.DataRow;
 import graphql.model.DataSheet;
+import graphql.model.SheetSchema;
+import graphql.util.Constants;
+import graphql.util.JsonUtils;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class MainParser extends ExternalAttributeResolver implements MutationParser {
 
+    // Nessun valore referenziato da altri fogli: la risposta non serve
+    private static final MutationSink.ResponseHandler IGNORE_RESPONSE = response -> {
+    };
+
+    // Per ogni mutation restituita come lista, il gestore della sua risposta
+    private final List<MutationSink.ResponseHandler> handlers = new ArrayList<>();
+    private String className;
+    private String endpoint;
+
+    public MainParser() {
+    }
+
+    /**
+     * @param context stato condiviso con gli altri parser dell'importazione
+     */
+    public MainParser(ImportContext context) {
+        super(context);
+    }
+
     @Override
     public List<String> parseAndGenerateMutations(
             DataSheet sheetData,
@@ -18,21 +42,84 @@ public class MainParser extends ExternalAttributeResolver implements MutationPar
             GraphQLQueryBuilder queryBuilder,
             GraphQLService graphQLService
     ) throws Exception {
-        resolveAllExternalAttributes(queryBuilder, graphQLService, sheetData);
+        List<String> mutations = new ArrayList<>();
+        handlers.clear();
+        parseAndEmitMutations(sheetData, mutationBuilder, queryBuilder, graphQLService, (mutation, handler) -> {
+            mutations.add(mutation);
+            handlers.add(handler);
+        });
+        return mutations;
+    }
 
-        return buildMainMutations(sheetData, mutationBuilder);
+    /**
+     * Genera una mutation di creazione per riga, consegnandole al sink una
+     * finestra di righe alla volta, dopo averne risolto i riferimenti.
+     */
+    @Override
+    public void parseAndEmitMutations(
+            DataSheet sheetData,
+            GraphQLMutationBuilder mutationBuilder,
+            GraphQLQueryBuilder queryBuilder,
+            GraphQLService graphQLService,
+            MutationSink sink
+    ) throws Exception {
+        className = sheetData.getName();
+        endpoint = graphQLService.primaryEndpoint;
+        List<String> referencedAttributes = new ArrayList<>();
+        for (SheetSchema.Column column : sheetData.getSchema().getColumns()) {
+            if (!column.isReference() && referenceCache.isReferenced(className, column.getAttributeName())) {
+                referencedAttributes.add(column.getAttributeName());
+            }
+        }
+
+        for (List<DataRow> window : rowWindows(sheetData)) {
+            resolveExternalAttributes(queryBuilder, graphQLService, sheetData, window);
+            for (DataRow row : window) {
+                Map<String, String> attributes = buildMainAttributes(sheetData, row);
+                if (!attributes.isEmpty()) {
+                    String mutation = mutationBuilder.buildMainCreateMutation(sheetData.getName(), attributes);
+                    sink.accept(mutation, created(referencedValues(attributes, referencedAttributes)));
+                }
+            }
+        }
     }
 
-    private List<String> buildMainMutations(DataSheet sheetData, GraphQLMutationBuilder mutationBuilder) {
-        List<String> mutations = new ArrayList<>();
-        for (DataRow row : sheetData.getDataRows()) {
-            Map<String, String> attributes = buildMainAttributes(sheetData, row);
-            if (!attributes.isEmpty()) {
-                String mutation = mutationBuilder.buildMainCreateMutation(sheetData.getName(), attributes);
-                mutations.add(mutation);
+    private static Map<String, String> referencedValues(Map<String, String> attributes, List<String> referencedAttributes) {
+        if (referencedAttributes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String attribute : referencedAttributes) {
+            String value = attributes.get(attribute);
+            if (value != null) {
+                values.put(attribute, value);
             }
         }
-        return mutations;
+        return values;
     }
 
+    /**
+     * Gestore della risposta di creazione: registra nella cache dei
+     * riferimenti l'ID dell'oggetto creato, per i valori degli attributi che
+     * altri fogli usano come riferimento.
+     */
+    private MutationSink.ResponseHandler created(Map<String, String> values) {
+        if (values.isEmpty()) {
+            return IGNORE_RESPONSE;
+        }
+        return response -> {
+            if (response == null) {
+                return;
+            }
+            String id = new JsonUtils().extractValueFromResponse(response, Constants.ID);
+            if (id != null) {
+                values.forEach((attribute, value) -> referenceCache.seed(endpoint, className, attribute, value, id));
+            }
+        };
+    }
+
+    @Override
+    public void mutationExecuted(int index, String response) throws Exception {
+        handlers.get(index).handle(response);
+    }
 }
@@ -34,4 +34,40 @@ public interface MutationParser {
             GraphQLQueryBuilder queryBuilder,
             GraphQLService graphQLService) throws Exception;
 
+    /**
+     * Notifies the parser that the mutation at the given position of the
+     * list returned by {@link #parseAndGenerateMutations} has been executed.
+     * The default implementation ignores the response.
+     *
+     * @param index The position of the mutation in the list.
+     * @param response The JSON response of the server.
+     */
+    default void mutationExecuted(int index, String response) throws Exception {
+    }
+
+    /**
+     * Streaming variant of {@link #parseAndGenerateMutations}: each mutation
+     * is passed to the sink as soon as its row has been processed, together
+     * with the handler for its response, so the sheet is never held as a
+     * full list of mutation strings. The default implementation builds the
+     * list and then passes its mutations to the sink, reporting responses
+     * through {@link #mutationExecuted}.
+     *
+     * @param sink The destination of the generated mutations.
+     * @throws Exception if an error occurs during parsing or ID retrieval,
+     * or if the sink fails to send a mutation.
+     */
+    default void parseAndEmitMutations(
+            DataSheet sheetData,
+            GraphQLMutationBuilder mutationBuilder,
+            GraphQLQueryBuilder queryBuilder,
+            GraphQLService graphQLService,
+            MutationSink sink) throws Exception {
+        List<String> mutations = parseAndGenerateMutations(sheetData, mutationBuilder, queryBuilder, graphQLService);
+        for (int i = 0; i < mutations.size(); i++) {
+            int index = i;
+            sink.accept(mutations.get(i), response -> mutationExecuted(index, response));
+        }
+    }
+
 }
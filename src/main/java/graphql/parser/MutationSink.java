@@ -0,0 +1,27 @@
+package graphql.parser;
+
+/**
+ * Destinazione delle mutation generate da un {@link MutationParser} durante
+ * l'elaborazione delle righe: ogni mutation viene consegnata appena pronta,
+ * insieme al gestore della sua risposta, invece di accumulare l'intero
+ * foglio in una lista.
+ */
+@FunctionalInterface
+public interface MutationSink {
+
+    /**
+     * Consegna una mutation da inviare. L'invio può avvenire in seguito, su
+     * un altro thread: il gestore riceve la risposta del server, o null se
+     * assente, nello stesso ordine di consegna delle mutation.
+     */
+    void accept(String mutation, ResponseHandler handler) throws Exception;
+
+    /**
+     * Elaborazione della risposta di una mutation inviata.
+     */
+    @FunctionalInterface
+    interface ResponseHandler {
+
+        void handle(String response) throws Exception;
+    }
+}
@@ -0,0 +1,121 @@
+package graphql.parser;
+
+import graphql.graphql.GraphQLService;
+import graphql.util.Concurrency;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invia le mutation ricevute da un parser su un thread dedicato, attraverso
+ * una coda limitata: la generazione delle righe successive procede mentre
+ * le precedenti sono in viaggio verso il server, e quando la coda è piena il
+ * parser attende, così la memoria occupata non dipende dal numero di righe.
+ * Le mutation vengono inviate una alla volta nell'ordine di consegna.
+ * <p>
+ * Al primo errore di invio non partono altre mutation: l'errore viene
+ * rilanciato una volta, alla consegna successiva o da {@link #close()}.
+ */
+public class QueuedMutationSink implements MutationSink, AutoCloseable {
+
+    // Segnala al thread di invio la fine delle mutation
+    private static final Pending END = new Pending(null, null);
+
+    private final GraphQLService graphQLService;
+    private final BlockingQueue<Pending> queue;
+    private final ExecutorService sender;
+    private final Future<?> sending;
+    private volatile Exception failure;
+    private boolean failureReported = false;
+    private boolean closed = false;
+
+    /**
+     * @param capacity numero massimo di mutation in attesa di invio
+     */
+    public QueuedMutationSink(GraphQLService graphQLService, String name, int capacity) {
+        this.graphQLService = graphQLService;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.sender = Executors.newSingleThreadExecutor(Concurrency.namedDaemonThreads("graphql-send-" + name));
+        this.sending = sender.submit(this::send);
+    }
+
+    @Override
+    public void accept(String mutation, ResponseHandler handler) throws Exception {
+        checkFailure();
+        while (!queue.offer(new Pending(mutation, handler), 100, TimeUnit.MILLISECONDS)) {
+            // Dopo un errore il thread di invio scarta la coda, che quindi si libera
+            checkFailure();
+        }
+    }
+
+    private Void send() throws InterruptedException {
+        Pending pending;
+        while ((pending = queue.take()) != END) {
+            if (failure != null) {
+                continue;
+            }
+            try {
+                pending.handler.handle(graphQLService.executeQueryWithFallback(pending.mutation).orElse(null));
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        return null;
+    }
+
+    // Rilancia l'errore di invio una sola volta, per non sopprimerlo in se stesso in un try-with-resources
+    private void checkFailure() throws Exception {
+        if (failure != null && !failureReported) {
+            failureReported = true;
+            throw failure;
+        }
+    }
+
+    /**
+     * Attende l'invio delle mutation in coda e rilancia l'eventuale errore,
+     * come IOException se non lo è già. Se il thread viene interrotto
+     * l'invio si ferma e lo stato di interruzione viene ripristinato.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END);
+            sending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Invio delle mutation interrotto");
+        } catch (ExecutionException e) {
+            throw new IOException("Errore durante l'invio delle mutation: " + e.getCause(), e.getCause());
+        } finally {
+            sender.shutdownNow();
+        }
+        try {
+            checkFailure();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Errore durante l'invio delle mutation: " + e.getMessage(), e);
+        }
+    }
+
+    private static class Pending {
+
+        private final String mutation;
+        private final ResponseHandler handler;
+
+        Pending(String mutation, ResponseHandler handler) {
+            this.mutation = mutation;
+            this.handler = handler;
+        }
+    }
+}
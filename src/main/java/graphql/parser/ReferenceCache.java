@@ -0,0 +1,282 @@
+package graphql.parser;
+
+import graphql.util.LoggerUI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache degli ID dei riferimenti esterni condivisa da tutti i fogli di
+ * un'importazione: fogli diversi che puntano alla stessa classe e allo stesso
+ * attributo (es. '*Paziente.codice') interrogano il server solo per i valori
+ * non ancora trovati. Le chiavi sono endpoint, classe, attributo e valore
+ * formattato come nella query; la cache è thread-safe.
+ * <p>
+ * Oltre che dalle risposte delle ricerche, la cache viene alimentata dalle
+ * risposte delle mutation di creazione, limitatamente agli attributi che
+ * qualche foglio usa come riferimento: un foglio che punta alle righe appena
+ * create le trova senza interrogare il server.
+ * <p>
+ * Con un {@link ReferenceStore} gli ID trovati dalle ricerche vengono anche
+ * salvati su disco e caricati al primo uso di ogni endpoint, così le
+ * importazioni successive non li richiedono di nuovo al server.
+ * <p>
+ * Vengono ricordati anche i valori che il server non ha trovato, per non
+ * cercarli di nuovo in altre colonne o fogli: sono riportati una sola volta
+ * alla fine, raggruppati per classe e attributo. Un valore smette di essere
+ * considerato mancante quando un foglio crea un oggetto che lo contiene.
+ */
+public class ReferenceCache {
+
+    private final Map<String, Map<String, String>> scopes = new ConcurrentHashMap<>();
+    // Valori assegnati a più oggetti creati, da non registrare più
+    private final Map<String, Set<String>> ambiguous = new ConcurrentHashMap<>();
+    // Valori cercati sul server senza risultato
+    private final Map<String, Set<String>> unresolved = new ConcurrentHashMap<>();
+    private final Set<String> referencedAttributes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong seeded = new AtomicLong();
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong knownMisses = new AtomicLong();
+
+    // Archivio su disco, null se non configurato
+    private final ReferenceStore store;
+    private final Set<String> loadedEndpoints = ConcurrentHashMap.newKeySet();
+
+    public ReferenceCache() {
+        this(null);
+    }
+
+    public ReferenceCache(ReferenceStore store) {
+        this.store = store;
+    }
+
+    private static final int MAX_EXAMPLES = 10;
+
+    private static String key(String endpoint, String className, String attributeName) {
+        return endpoint + ' ' + className + '.' + attributeName;
+    }
+
+    private Map<String, String> scope(String endpoint, String className, String attributeName) {
+        load(endpoint);
+        return scopes.computeIfAbsent(key(endpoint, className, attributeName), k -> new ConcurrentHashMap<>());
+    }
+
+    // Carica una sola volta gli ID salvati su disco per l'endpoint
+    private void load(String endpoint) {
+        if (store == null || loadedEndpoints.contains(endpoint)) {
+            return;
+        }
+        synchronized (loadedEndpoints) {
+            if (loadedEndpoints.contains(endpoint)) {
+                return;
+            }
+            store.load(endpoint).forEach((attribute, ids) -> {
+                scopes.computeIfAbsent(endpoint + ' ' + attribute, k -> new ConcurrentHashMap<>()).putAll(ids);
+                loaded.addAndGet(ids.size());
+            });
+            loadedEndpoints.add(endpoint);
+        }
+    }
+
+    /**
+     * Indica un attributo usato come riferimento da qualche foglio: solo
+     * questi vengono registrati da {@link #seed}.
+     */
+    public void addReferencedAttribute(String className, String attributeName) {
+        referencedAttributes.add(className + '.' + attributeName);
+    }
+
+    /**
+     * Indica se l'attributo è usato come riferimento da qualche foglio.
+     */
+    public boolean isReferenced(String className, String attributeName) {
+        return referencedAttributes.contains(className + '.' + attributeName);
+    }
+
+    /**
+     * Registra l'ID di un oggetto appena creato per il valore di un suo
+     * attributo referenziato. Se lo stesso valore compare in due oggetti
+     * diversi viene rimosso e non più registrato: la ricerca passa di nuovo
+     * al server, che segnala i duplicati. Il valore non è più considerato
+     * mancante.
+     */
+    public void seed(String endpoint, String className, String attributeName, String formattedValue, String id) {
+        Set<String> missing = unresolved.get(key(endpoint, className, attributeName));
+        if (missing != null) {
+            missing.remove(formattedValue);
+        }
+        if (!isReferenced(className, attributeName)) {
+            return;
+        }
+        Map<String, String> ids = scope(endpoint, className, attributeName);
+        Set<String> duplicates = ambiguous.computeIfAbsent(key(endpoint, className, attributeName), k -> ConcurrentHashMap.newKeySet());
+        synchronized (ids) {
+            if (duplicates.contains(formattedValue)) {
+                return;
+            }
+            String previous = ids.putIfAbsent(formattedValue, id);
+            if (previous == null) {
+                seeded.incrementAndGet();
+            } else if (!previous.equals(id)) {
+                ids.remove(formattedValue);
+                duplicates.add(formattedValue);
+            }
+        }
+    }
+
+    /**
+     * ID già noti per i valori formattati indicati; i valori assenti dal
+     * risultato vanno richiesti al server. Aggiorna i contatori di
+     * hit e miss.
+     */
+    public Map<String, String> lookup(String endpoint, String className, String attributeName, Collection<String> formattedValues) {
+        Map<String, String> ids = scope(endpoint, className, attributeName);
+        Map<String, String> found = new LinkedHashMap<>();
+        for (String value : formattedValues) {
+            String id = ids.get(value);
+            if (id != null) {
+                found.put(value, id);
+            }
+        }
+        hits.addAndGet(found.size());
+        misses.addAndGet(formattedValues.size() - found.size());
+        return found;
+    }
+
+    /**
+     * Valori formattati già cercati sul server senza risultato, da non
+     * richiedere di nuovo.
+     */
+    public Set<String> unresolved(String endpoint, String className, String attributeName, Collection<String> formattedValues) {
+        Set<String> missing = unresolved.get(key(endpoint, className, attributeName));
+        if (missing == null || missing.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> found = new LinkedHashSet<>();
+        for (String value : formattedValues) {
+            if (missing.contains(value)) {
+                found.add(value);
+            }
+        }
+        knownMisses.addAndGet(found.size());
+        return found;
+    }
+
+    /**
+     * Registra i valori formattati che il server non ha trovato.
+     */
+    public void putUnresolved(String endpoint, String className, String attributeName, Collection<String> formattedValues) {
+        if (!formattedValues.isEmpty()) {
+            unresolved.computeIfAbsent(key(endpoint, className, attributeName), k -> ConcurrentHashMap.newKeySet()).addAll(formattedValues);
+        }
+    }
+
+    /**
+     * Registra gli ID ricevuti dal server, per valore formattato.
+     */
+    public void putAll(String endpoint, String className, String attributeName, Map<String, String> formattedValue2id) {
+        scope(endpoint, className, attributeName).putAll(formattedValue2id);
+        if (store != null) {
+            store.append(endpoint, className, attributeName, formattedValue2id);
+        }
+    }
+
+    /**
+     * Dimentica gli ID di una classe, o di tutte con "*", anche su disco:
+     * da usare quando gli oggetti della classe vengono cancellati.
+     */
+    public void invalidate(String endpoint, String className) {
+        load(endpoint);
+        String prefix = ReferenceStore.ALL_CLASSES.equals(className) ? endpoint + ' ' : key(endpoint, className, "");
+        scopes.keySet().removeIf(key -> key.startsWith(prefix));
+        ambiguous.keySet().removeIf(key -> key.startsWith(prefix));
+        unresolved.keySet().removeIf(key -> key.startsWith(prefix));
+        if (store != null) {
+            store.invalidate(endpoint, className);
+        }
+    }
+
+    /**
+     * Valori già noti come mancanti e quindi non richiesti al server.
+     */
+    public long getKnownMisses() {
+        return knownMisses.get();
+    }
+
+    /**
+     * Valori trovati in cache senza interrogare il server.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Valori cercati e non presenti in cache, quindi richiesti al server.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * ID registrati dalle risposte delle mutation di creazione.
+     */
+    public long getSeeded() {
+        return seeded.get();
+    }
+
+    /**
+     * ID caricati dall'archivio su disco.
+     */
+    public long getLoaded() {
+        return loaded.get();
+    }
+
+    /**
+     * Numero di ID memorizzati.
+     */
+    public int size() {
+        return scopes.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Riporta nel log l'utilizzo della cache, se ci sono stati riferimenti
+     * da risolvere, e i valori rimasti senza corrispondenza per ogni classe e
+     * attributo.
+     */
+    public void log() {
+        if (hits.get() + misses.get() > 0) {
+            LoggerUI.log("Cache dei riferimenti: " + size() + " ID memorizzati (" + seeded.get() + " dalle creazioni"
+                    + (store != null ? ", " + loaded.get() + " dal disco" : "") + "), "
+                    + hits.get() + " valori trovati in cache, " + misses.get() + " richiesti al server"
+                    + (knownMisses.get() > 0 ? ", " + knownMisses.get() + " già noti come mancanti" : ""));
+        }
+        for (Map.Entry<String, Set<String>> entry : new TreeMap<>(unresolved).entrySet()) {
+            Set<String> missing = entry.getValue();
+            if (missing.isEmpty()) {
+                continue;
+            }
+            List<String> examples = new ArrayList<>();
+            for (String value : new TreeSet<>(missing)) {
+                if (examples.size() == MAX_EXAMPLES) {
+                    examples.add("...");
+                    break;
+                }
+                examples.add(value);
+            }
+            // Nel log basta classe.attributo, senza l'endpoint della chiave
+            String attribute = entry.getKey().substring(entry.getKey().lastIndexOf(' ') + 1);
+            LoggerUI.log("Riferimenti senza corrispondenza per " + attribute + ": " + missing.size() + " valori (" + String.join(", ", examples) + ")");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package graphql.parser;
+
+import graphql.util.LoggerUI;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Archivio su disco degli ID dei riferimenti esterni, per riutilizzarli
+ * nelle importazioni successive verso lo stesso endpoint. Ogni endpoint ha
+ * un proprio file di testo a cui le righe vengono solo aggiunte:
+ * <pre>
+ * P	istante	classe	attributo	valore	id
+ * I	istante	classe
+ * </pre>
+ * dove "P" registra un ID e "I" invalida tutti gli ID di una classe ("*" per
+ * tutte). Alla lettura gli ID più vecchi della durata indicata vengono
+ * scartati; se le righe scartate superano quelle valide il file viene
+ * riscritto compatto.
+ */
+public class ReferenceStore {
+
+    private static final String HEADER = "# Cache degli ID dei riferimenti, endpoint ";
+    static final String ALL_CLASSES = "*";
+
+    private final File directory;
+    private final long ttlMillis;
+
+    public ReferenceStore(File directory, long ttlMillis) {
+        this.directory = directory;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * ID validi registrati per l'endpoint, per chiave "classe.attributo" e
+     * valore formattato.
+     */
+    public synchronized Map<String, Map<String, String>> load(String endpoint) {
+        Map<String, Map<String, Entry>> entries = new LinkedHashMap<>();
+        File file = file(endpoint);
+        if (!file.isFile()) {
+            return new LinkedHashMap<>();
+        }
+        long now = System.currentTimeMillis();
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                lines++;
+                String[] fields = line.split("\t", -1);
+                if (fields[0].equals("P") && fields.length == 6) {
+                    entries.computeIfAbsent(unescape(fields[2]) + '.' + unescape(fields[3]), k -> new LinkedHashMap<>())
+                            .put(unescape(fields[4]), new Entry(Long.parseLong(fields[1]), unescape(fields[5])));
+                } else if (fields[0].equals("I") && fields.length == 3) {
+                    String className = unescape(fields[2]);
+                    entries.keySet().removeIf(key -> className.equals(ALL_CLASSES) || key.startsWith(className + '.'));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LoggerUI.log("Cache dei riferimenti non leggibile (" + file + "), verrà ricreata: " + e.getMessage());
+            entries.clear();
+            lines = Integer.MAX_VALUE;
+        }
+
+        Map<String, Map<String, String>> ids = new LinkedHashMap<>();
+        int valid = 0;
+        for (Map.Entry<String, Map<String, Entry>> scope : entries.entrySet()) {
+            Map<String, String> value2id = new LinkedHashMap<>();
+            for (Iterator<Map.Entry<String, Entry>> it = scope.getValue().entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Entry> entry = it.next();
+                if (now - entry.getValue().time > ttlMillis) {
+                    it.remove();
+                } else {
+                    value2id.put(entry.getKey(), entry.getValue().id);
+                }
+            }
+            if (!value2id.isEmpty()) {
+                ids.put(scope.getKey(), value2id);
+                valid += value2id.size();
+            }
+        }
+        if (lines - valid > valid) {
+            compact(endpoint, entries);
+        }
+        return ids;
+    }
+
+    /**
+     * Aggiunge al file dell'endpoint gli ID trovati per un attributo.
+     */
+    public synchronized void append(String endpoint, String className, String attributeName, Map<String, String> formattedValue2id) {
+        if (formattedValue2id.isEmpty()) {
+            return;
+        }
+        String time = String.valueOf(System.currentTimeMillis());
+        try (Writer writer = open(endpoint)) {
+            for (Map.Entry<String, String> entry : formattedValue2id.entrySet()) {
+                writer.write("P\t" + time + '\t' + escape(className) + '\t' + escape(attributeName) + '\t'
+                        + escape(entry.getKey()) + '\t' + escape(entry.getValue()) + '\n');
+            }
+        } catch (IOException e) {
+            LoggerUI.log("Impossibile aggiornare la cache dei riferimenti: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Invalida gli ID registrati per una classe, o per tutte con "*".
+     */
+    public synchronized void invalidate(String endpoint, String className) {
+        if (!file(endpoint).isFile()) {
+            return;
+        }
+        try (Writer writer = open(endpoint)) {
+            writer.write("I\t" + System.currentTimeMillis() + '\t' + escape(className) + '\n');
+        } catch (IOException e) {
+            LoggerUI.log("Impossibile aggiornare la cache dei riferimenti: " + e.getMessage());
+        }
+    }
+
+    // Riscrive il file con i soli ID validi, sostituendolo solo a scrittura completata
+    private void compact(String endpoint, Map<String, Map<String, Entry>> entries) {
+        File file = file(endpoint);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER + endpoint + '\n');
+            for (Map.Entry<String, Map<String, Entry>> scope : entries.entrySet()) {
+                int dot = scope.getKey().indexOf('.');
+                String prefix = escape(scope.getKey().substring(0, dot)) + '\t' + escape(scope.getKey().substring(dot + 1)) + '\t';
+                for (Map.Entry<String, Entry> entry : scope.getValue().entrySet()) {
+                    writer.write("P\t" + entry.getValue().time + '\t' + prefix + escape(entry.getKey()) + '\t' + escape(entry.getValue().id) + '\n');
+                }
+            }
+        } catch (IOException e) {
+            LoggerUI.log("Impossibile compattare la cache dei riferimenti: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LoggerUI.log("Impossibile compattare la cache dei riferimenti: " + e.getMessage());
+            temp.delete();
+        }
+    }
+
+    private Writer open(String endpoint) throws IOException {
+        File file = file(endpoint);
+        if (!file.isFile()) {
+            Files.createDirectories(directory.toPath());
+            BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+            writer.write(HEADER + endpoint + '\n');
+            return writer;
+        }
+        return Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    // Un file per endpoint, con un nome leggibile e l'hash per distinguere endpoint simili
+    private File file(String endpoint) {
+        String name = endpoint.replaceAll("^[a-zA-Z]+://", "").replaceAll("[^a-zA-Z0-9.-]+", "_");
+        if (name.length() > 80) {
+            name = name.substring(0, 80);
+        }
+        return new File(directory, name + '-' + Integer.toHexString(endpoint.hashCode()) + ".ids");
+    }
+
+    private static String escape(String text) {
+        if (text.indexOf('\\') < 0 && text.indexOf('\t') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static class Entry {
+
+        private final long time;
+        private final String id;
+
+        Entry(long time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+    }
+}
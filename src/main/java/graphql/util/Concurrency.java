@@ -0,0 +1,154 @@
+package graphql.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility per eseguire attività indipendenti su un pool di thread limitato,
+ * restituendo i risultati nello stesso ordine delle attività, oppure
+ * attività con dipendenze tra loro.
+ */
+public final class Concurrency {
+
+    // Costruttore privato per impedire l'istanziazione
+    private Concurrency() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Esegue le attività con al massimo {@code parallelism} thread e ne
+     * restituisce i risultati in ordine. Alla prima attività fallita le
+     * restanti vengono annullate e viene rilanciata la causa originale.
+     */
+    public static <T> List<T> invokeAll(String poolName, List<? extends Callable<T>> tasks, int parallelism) throws Exception {
+        List<T> results = new ArrayList<>(tasks.size());
+        int threads = Math.min(Math.max(parallelism, 1), tasks.size());
+        if (threads <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, namedDaemonThreads(poolName));
+        try {
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Esegue le attività rispettando le dipendenze indicate, con al massimo
+     * {@code parallelism} thread: un'attività parte quando sono terminate
+     * tutte quelle in {@code prerequisites} alla sua posizione, e tra le
+     * attività pronte parte prima quella con posizione minore. Le dipendenze
+     * non devono essere circolari. Alla prima attività fallita non ne
+     * partono altre, quelle in corso vengono interrotte e viene rilanciata la
+     * causa originale.
+     */
+    public static void invokeGraph(String poolName, List<? extends Callable<?>> tasks,
+            List<? extends Collection<Integer>> prerequisites, int parallelism) throws Exception {
+        int[] pending = new int[tasks.size()];
+        List<List<Integer>> dependents = new ArrayList<>();
+        TreeSet<Integer> ready = new TreeSet<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            pending[i] = prerequisites.get(i).size();
+            for (int prerequisite : prerequisites.get(i)) {
+                dependents.get(prerequisite).add(i);
+            }
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        int threads = Math.min(Math.max(parallelism, 1), tasks.size());
+        if (threads <= 1) {
+            for (int done = 0; done < tasks.size(); done++) {
+                if (ready.isEmpty()) {
+                    throw new IllegalArgumentException("Dipendenze circolari tra le attività di " + poolName);
+                }
+                int index = ready.pollFirst();
+                tasks.get(index).call();
+                markDone(index, pending, dependents, ready);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, namedDaemonThreads(poolName));
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        try {
+            int running = 0;
+            for (int done = 0; done < tasks.size(); done++) {
+                while (!ready.isEmpty() && running < threads) {
+                    int index = ready.pollFirst();
+                    completion.submit(() -> {
+                        tasks.get(index).call();
+                        return index;
+                    });
+                    running++;
+                }
+                if (running == 0) {
+                    throw new IllegalArgumentException("Dipendenze circolari tra le attività di " + poolName);
+                }
+                markDone(completion.take().get(), pending, dependents, ready);
+                running--;
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void markDone(int index, int[] pending, List<List<Integer>> dependents, TreeSet<Integer> ready) {
+        for (int dependent : dependents.get(index)) {
+            if (--pending[dependent] == 0) {
+                ready.add(dependent);
+            }
+        }
+    }
+
+    /**
+     * Factory di thread daemon con nome riconoscibile nei thread dump.
+     */
+    public static ThreadFactory namedDaemonThreads(String poolName) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, poolName + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
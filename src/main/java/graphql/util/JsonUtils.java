@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import common.Utils;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -26,6 +27,10 @@ public class JsonUtils {
      * @return The escaped string.
      */
     public static String escapeJsonString(String text) {
+        // Caso più frequente: nessun carattere da sostituire, il testo viene restituito così com'è
+        if (!needsEscaping(text)) {
+            return text;
+        }
         return text.replace("\\", "\\\\")
                 .replace("\"", "\\\"")
                 .replace("\n", "\\n")
@@ -33,6 +38,16 @@ public class JsonUtils {
                 .replace("\t", "\\t");
     }
 
+    private static boolean needsEscaping(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' || c == '"' || c == '\n' || c == '\r' || c == '\t') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String extractValueFromResponse(String jsonResponse, String attributeName) throws IOException {
         JsonNode root = objectMapper.readTree(jsonResponse);
         return findValueRecursive(root, attributeName);
@@ -62,11 +77,29 @@ public class JsonUtils {
 
     public static Map<String, String> value2id(String json) throws Exception {
         ObjectMapper mapper = new ObjectMapper();
-        Map<String, String> map = new LinkedHashMap<>();
         JsonNode items = mapper.readTree(json)
                 .path("data")
                 .elements().next()
                 .path("items");
+        return value2id(items);
+    }
+
+    /**
+     * Come {@link #value2id(String)} per una risposta con più selezioni
+     * distinte da alias: restituisce la mappa valore-ID di ciascun alias.
+     */
+    public static Map<String, Map<String, String>> aliasedValue2id(String json) throws Exception {
+        Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> selections = objectMapper.readTree(json).path("data").fields();
+        while (selections.hasNext()) {
+            Map.Entry<String, JsonNode> selection = selections.next();
+            result.put(selection.getKey(), value2id(selection.getValue().path("items")));
+        }
+        return result;
+    }
+
+    private static Map<String, String> value2id(JsonNode items) {
+        Map<String, String> map = new LinkedHashMap<>();
         List<String> duplicati = new LinkedList<>();
         for (JsonNode item : items) {
             String k = item.elements().next().asText();
@@ -25,11 +25,16 @@ public class LoggerUI {
     }
 
     /**
-     * Registra un messaggio informativo nel log grafico se disponibile.
+     * Registra un messaggio informativo nel log grafico se disponibile,
+     * altrimenti sullo standard output (es. esecuzione da riga di comando).
      */
     public static void log(Object obj) {
         if (obj != null) {
-            inst.form.logInfo(obj.toString());
+            if (inst != null) {
+                inst.form.logInfo(obj.toString());
+            } else {
+                System.out.println(obj);
+            }
         }
     }
 }
@@ -0,0 +1,191 @@
+package graphql.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Opzioni di esecuzione dell'importatore. Ogni chiave può essere impostata
+ * come proprietà di sistema (es. -Dgraphql.reader.mode=workbook) oppure nel
+ * file "graphql_importer.properties" della cartella di lavoro; in assenza di
+ * entrambi si usa il valore di default.
+ */
+public final class Settings {
+
+    private static final String SETTINGS_FILE = "graphql_importer.properties";
+
+    /**
+     * Reader da usare per i file .xlsx: "streaming" (default) oppure
+     * "workbook" per il caricamento completo tramite XSSFWorkbook.
+     */
+    public static final String READER_MODE = "graphql.reader.mode";
+
+    /**
+     * Numero massimo di fogli letti in parallelo nella lettura in streaming
+     * (xlsx e CSV); il workbook completo viene letto un foglio alla volta
+     * (default: numero di core).
+     */
+    public static final String READER_THREADS = "graphql.reader.threads";
+
+    /**
+     * Se "true", il reader "workbook" usa per le formule il risultato
+     * memorizzato nel file invece di rivalutarle.
+     */
+    public static final String READER_CACHED_FORMULAS = "graphql.reader.cachedFormulas";
+
+    /**
+     * Se "true", i fogli .xlsx in modalità streaming vengono letti su
+     * richiesta durante l'importazione invece che caricati all'avvio.
+     */
+    public static final String READER_LAZY = "graphql.reader.lazy";
+
+    /**
+     * Numero di righe decodificate in anticipo per i fogli letti su
+     * richiesta, usato anche come finestra di risoluzione dei riferimenti.
+     */
+    public static final String READER_WINDOW = "graphql.reader.window";
+
+    /**
+     * Se "true" (default), i fogli letti completamente vengono memorizzati
+     * per colonne, riducendo la memoria occupata dai fogli con molte righe.
+     */
+    public static final String READER_COLUMNAR = "graphql.reader.columnar";
+
+    /**
+     * Numero massimo di valori distinti condivisi tra le celle di un file
+     * (default 500000); 0 disattiva la deduplicazione dei valori.
+     */
+    public static final String READER_INTERN_LIMIT = "graphql.reader.internLimit";
+
+    /**
+     * Se "true" (default), le celle con formato data vengono scritte in
+     * ISO-8601 (es. "2021-01-31") invece che con il formato della cella.
+     */
+    public static final String READER_ISO_DATES = "graphql.reader.isoDates";
+
+    /**
+     * Numero massimo di fogli importati contemporaneamente (default 4): i
+     * fogli partono appena sono stati importati quelli che creano le classi
+     * a cui fanno riferimento; 1 li importa uno alla volta.
+     */
+    public static final String IMPORT_THREADS = "graphql.import.threads";
+
+    /**
+     * Numero massimo di mutation generate per un foglio e in attesa di
+     * invio (default 1000): oltre questo numero la generazione attende il
+     * server, così la memoria non cresce con le righe del foglio.
+     */
+    public static final String IMPORT_QUEUE = "graphql.import.queue";
+
+    /**
+     * Numero massimo di richieste contemporanee per la ricerca degli ID dei
+     * riferimenti esterni (default 4); 1 esegue le richieste in sequenza.
+     */
+    public static final String LOOKUP_THREADS = "graphql.lookup.threads";
+
+    /**
+     * Numero minimo di valori per query nella ricerca degli ID (default 20).
+     */
+    public static final String LOOKUP_BATCH_MIN = "graphql.lookup.batchMin";
+
+    /**
+     * Numero massimo di valori per query nella ricerca degli ID (default
+     * 1000). La dimensione parte da questo valore e si adatta ai tempi di
+     * risposta, senza scendere sotto il minimo.
+     */
+    public static final String LOOKUP_BATCH_MAX = "graphql.lookup.batchMax";
+
+    /**
+     * Dimensione massima in byte del corpo di una richiesta di ricerca degli
+     * ID (default 32768), per restare entro i limiti dei proxy.
+     */
+    public static final String LOOKUP_BATCH_BYTES = "graphql.lookup.batchBytes";
+
+    /**
+     * Tempo di risposta obiettivo in millisecondi per una query di ricerca
+     * degli ID (default 2000): oltre questo tempo i batch vengono ridotti,
+     * sotto la metà vengono ingranditi.
+     */
+    public static final String LOOKUP_TARGET_MS = "graphql.lookup.targetMs";
+
+    /**
+     * Cartella in cui salvare gli ID dei riferimenti tra un'importazione e
+     * l'altra, un file per endpoint. Se vuota (default) gli ID restano in
+     * memoria per la sola importazione corrente.
+     */
+    public static final String LOOKUP_CACHE_DIR = "graphql.lookup.cacheDir";
+
+    /**
+     * Validità in ore degli ID salvati su disco (default 24): quelli più
+     * vecchi vengono richiesti di nuovo al server.
+     */
+    public static final String LOOKUP_CACHE_TTL_HOURS = "graphql.lookup.cacheTtlHours";
+
+    /**
+     * Classi di cui ignorare gli ID salvati su disco all'avvio, separate da
+     * virgola, oppure "*" per svuotare l'intera cache dell'endpoint.
+     */
+    public static final String LOOKUP_CACHE_INVALIDATE = "graphql.lookup.cacheInvalidate";
+
+    /**
+     * Numero massimo di errori di riga riportati in dettaglio nel resoconto
+     * finale dell'importazione (default 1000); oltre viene indicato solo il
+     * conteggio.
+     */
+    public static final String ERRORS_MAX_LOGGED = "graphql.errors.maxLogged";
+
+    private static Properties fileProperties = null;
+
+    // Costruttore privato per impedire l'istanziazione
+    private Settings() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Restituisce il valore dell'opzione, dando precedenza alle proprietà di
+     * sistema rispetto al file di configurazione.
+     */
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = fileProperties().getProperty(key);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Restituisce l'opzione come intero, usando il default se assente o non
+     * valida.
+     */
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Restituisce l'opzione come booleano ("true"/"false").
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, String.valueOf(defaultValue)));
+    }
+
+    private static synchronized Properties fileProperties() {
+        if (fileProperties == null) {
+            fileProperties = new Properties();
+            File file = new File(SETTINGS_FILE);
+            if (file.isFile()) {
+                try (InputStream is = new FileInputStream(file)) {
+                    fileProperties.load(is);
+                } catch (IOException e) {
+                    // File non leggibile: si prosegue con i valori di default
+                }
+            }
+        }
+        return fileProperties;
+    }
+}
@@ -0,0 +1,197 @@
+package graphql.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import graphql.model.DataCell;
+import graphql.model.DataFile;
+import graphql.model.DataRow;
+import graphql.model.DataSheet;
+import graphql.model.Header;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class ExcelDataReaderTest {
+
+    @Test
+    public void rowsDoNotRetainWorkbook() throws Exception {
+        checkWorkbookReleased(false);
+    }
+
+    @Test
+    public void columnsDoNotRetainWorkbook() throws Exception {
+        checkWorkbookReleased(true);
+    }
+
+    /**
+     * Legge un file con il modello completo e verifica che, rilasciato il
+     * reader, il workbook venga raccolto mentre le righe lette sono ancora
+     * in uso.
+     */
+    private void checkWorkbookReleased(boolean columnar) throws Exception {
+        File file = File.createTempFile("excel-data-reader", ".xlsx");
+        try {
+            writeWorkbook(file);
+            WorkbookTracker reader = new WorkbookTracker();
+            reader.setColumnar(columnar);
+            try (DataFile data = reader.readExcelFile(file.getPath())) {
+                WeakReference<Workbook> workbook = reader.opened;
+                reader = null;
+                for (int i = 0; i < 20 && workbook.get() != null; i++) {
+                    System.gc();
+                    Thread.sleep(50);
+                }
+                assertNull("Il workbook è ancora raggiungibile dai dati letti", workbook.get());
+
+                DataRow row = data.getDataSheets().get(0).getDataRows().get(0);
+                assertEquals("COD1", row.get(0).getValue());
+                assertEquals("42", row.get(1).getFormattedValue());
+                assertEquals("\"2021-03-04\"", row.get(2).getFormattedValue());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Serializzare tutte le celle di un foglio a colonne, come fa
+     * l'importazione, non deve riportare l'heap trattenuto a quello del
+     * modello a righe: i valori serializzati non restano associati al
+     * foglio.
+     */
+    @Test
+    public void formattingColumnsDoesNotRetainValues() throws Exception {
+        File file = File.createTempFile("excel-data-reader", ".csv");
+        try {
+            writeCsv(file, 200_000);
+            ExcelDataReader reader = new ExcelDataReader();
+            reader.setColumnar(true);
+            long empty = retainedHeap();
+            try (DataFile data = reader.readExcelFile(file.getPath())) {
+                long read = retainedHeap();
+                long length = 0;
+                for (DataSheet sheet : data.getDataSheets()) {
+                    for (Header header : sheet.getHeaders()) {
+                        for (DataCell cell : sheet.cells(header)) {
+                            length += cell.getFormattedValue().length();
+                        }
+                    }
+                    for (DataRow row : sheet.getDataRows()) {
+                        for (DataCell cell : row.getDataCells()) {
+                            length += cell.getFormattedValue().length();
+                        }
+                    }
+                }
+                long formatted = retainedHeap();
+                assertTrue(length > 0);
+                assertTrue("Heap trattenuto dopo la lettura: " + (read - empty) / 1024 + " KB, dopo la serializzazione: "
+                        + (formatted - empty) / 1024 + " KB", formatted - read < (read - empty) / 4);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Un'intestazione più lunga del buffer di lettura non deve impedire di
+     * riconoscere il separatore.
+     */
+    @Test
+    public void longHeaderKeepsItsDelimiter() throws Exception {
+        File file = File.createTempFile("excel-data-reader", ".csv");
+        try {
+            int columns = 10_000;
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                StringBuilder header = new StringBuilder("codice");
+                StringBuilder row = new StringBuilder("COD1");
+                for (int c = 1; c < columns; c++) {
+                    header.append(";campo").append(c);
+                    row.append(';').append(c);
+                }
+                writer.write(header + "\n" + row + "\n");
+            }
+            try (DataFile data = new ExcelDataReader().readExcelFile(file.getPath())) {
+                DataSheet sheet = data.getDataSheets().get(0);
+                assertEquals(columns, sheet.getHeaders().size());
+                assertEquals("9999", sheet.getDataRows().get(0).get(columns - 1).getValue());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    // Heap occupato dopo la raccolta, il minimo di alcune misure per ridurre il rumore
+    private static long retainedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static void writeCsv(File file, int rows) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("codice,eta,peso,attivo\n");
+            for (int r = 1; r <= rows; r++) {
+                writer.write("COD" + r + "," + (r % 90) + "," + (50 + (r % 400) / 10.0) + "," + (r % 3 == 0 ? "TRUE" : "FALSE") + "\n");
+            }
+        }
+    }
+
+    private static void writeWorkbook(File file) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd/mm/yyyy"));
+            Sheet sheet = workbook.createSheet("Visita");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("codice");
+            header.createCell(1).setCellValue("eta");
+            header.createCell(2).setCellValue("data");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue("COD1");
+            row.createCell(1).setCellValue(42);
+            Cell date = row.createCell(2);
+            date.setCellValue(new GregorianCalendar(2021, Calendar.MARCH, 4).getTime());
+            date.setCellStyle(dateStyle);
+            try (OutputStream os = new FileOutputStream(file)) {
+                workbook.write(os);
+            }
+        }
+    }
+
+    // Reader del modello completo che tiene solo un riferimento debole al workbook aperto
+    private static class WorkbookTracker extends ExcelDataReader {
+
+        private WeakReference<Workbook> opened;
+
+        WorkbookTracker() {
+            super(Mode.WORKBOOK);
+        }
+
+        @Override
+        Workbook openWorkbook(File file) throws IOException {
+            Workbook workbook = super.openWorkbook(file);
+            opened = new WeakReference<>(workbook);
+            return workbook;
+        }
+    }
+}
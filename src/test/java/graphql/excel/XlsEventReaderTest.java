@@ -0,0 +1,98 @@
+package graphql.excel;
+
+import static org.junit.Assert.assertEquals;
+
+import graphql.model.DataFile;
+import graphql.model.DataRow;
+import graphql.model.DataSheet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.junit.Test;
+
+public class XlsEventReaderTest {
+
+    /**
+     * Un foglio grafico prima dei fogli di lavoro e un grafico incorporato
+     * nel primo foglio non devono spostare i nomi né chiudere il foglio
+     * prima delle sue ultime righe.
+     */
+    @Test
+    public void chartsDoNotShiftOrTruncateSheets() throws Exception {
+        List<Record> stream = workbookRecords();
+        // Scheda grafico in testa, con il suo blocco tra quello globale e i fogli di lavoro
+        int firstSheet = indexOf(stream, BoundSheetRecord.class);
+        BoundSheetRecord chart = new BoundSheetRecord("Grafico");
+        chart.setPositionOfBof(((BoundSheetRecord) stream.get(firstSheet)).getPositionOfBof() - 1);
+        stream.add(firstSheet, chart);
+        int globalsEnd = indexOf(stream, EOFRecord.class);
+        stream.add(globalsEnd + 1, bof(BOFRecord.TYPE_CHART));
+        stream.add(globalsEnd + 2, EOFRecord.instance);
+        // Grafico incorporato all'inizio del primo foglio, prima delle righe
+        int firstWorksheet = globalsEnd + 3;
+        assertEquals(BOFRecord.TYPE_WORKSHEET, ((BOFRecord) stream.get(firstWorksheet)).getType());
+        stream.add(firstWorksheet + 1, bof(BOFRecord.TYPE_CHART));
+        stream.add(firstWorksheet + 2, EOFRecord.instance);
+
+        DataFile data = new XlsEventReader(new ValueInterner(0), false, new DateFormats(false)).read(stream);
+
+        List<DataSheet> sheets = data.getDataSheets();
+        assertEquals(2, sheets.size());
+        assertEquals("Visita", sheets.get(0).getName());
+        assertEquals("Paziente", sheets.get(1).getName());
+        List<DataRow> rows = sheets.get(0).getDataRows();
+        assertEquals(2, rows.size());
+        assertEquals("V2", rows.get(1).get(0).getValue());
+        assertEquals("P1", sheets.get(1).getDataRows().get(0).get(0).getValue());
+    }
+
+    private static int indexOf(List<Record> records, Class<? extends Record> type) {
+        for (int i = 0; i < records.size(); i++) {
+            if (type.isInstance(records.get(i))) {
+                return i;
+            }
+        }
+        throw new IllegalStateException(type.getSimpleName());
+    }
+
+    private static BOFRecord bof(int type) {
+        BOFRecord bof = new BOFRecord();
+        bof.setVersion(BOFRecord.VERSION);
+        bof.setType(type);
+        return bof;
+    }
+
+    private static List<Record> workbookRecords() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HSSFWorkbook workbook = new HSSFWorkbook()) {
+            sheet(workbook, "Visita", "V1", "V2");
+            sheet(workbook, "Paziente", "P1");
+            workbook.write(bytes);
+        }
+        try (POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(bytes.toByteArray()));
+                InputStream stream = fs.createDocumentInputStream("Workbook")) {
+            return new ArrayList<>(RecordFactory.createRecords(stream));
+        }
+    }
+
+    private static void sheet(HSSFWorkbook workbook, String name, String... codes) {
+        HSSFSheet sheet = workbook.createSheet(name);
+        sheet.createRow(0).createCell(0).setCellValue("codice");
+        for (int r = 0; r < codes.length; r++) {
+            HSSFRow row = sheet.createRow(r + 1);
+            row.createCell(0).setCellValue(codes[r]);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package graphql.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.poi.ss.usermodel.CellType;
+import org.junit.Test;
+
+public class ColumnarDataSheetTest {
+
+    private final Header code = new Header("codice", 0);
+    private final Header quantity = new Header("quantita", 1);
+
+    @Test
+    public void rowsAreRebuiltFromColumns() {
+        ColumnarDataSheet sheet = sheet();
+
+        DataRow row = sheet.getDataRows().get(1);
+        assertEquals(3, row.getRowNumber());
+        assertEquals("B", row.get(code).getValue());
+        assertEquals("12", row.get(quantity).getValue());
+        assertEquals("12", row.get(quantity).getFormattedValue());
+    }
+
+    @Test
+    public void sameRowIsReturnedWhileInUse() {
+        ColumnarDataSheet sheet = sheet();
+
+        DataRow row = sheet.getDataRows().get(0);
+        assertSame(row, sheet.getDataRows().get(0));
+        assertSame(row.get(code), sheet.getDataRows().get(0).get(code));
+    }
+
+    @Test
+    public void columnScanReturnsCellsOfRowsInUse() {
+        ColumnarDataSheet sheet = sheet();
+
+        DataRow row = sheet.getDataRows().get(1);
+        Iterator<DataCell> cells = sheet.cells(quantity).iterator();
+        assertEquals("3", cells.next().getValue());
+        assertSame(row.get(quantity), cells.next());
+    }
+
+    @Test
+    public void formattedValueIsKeptByTheCellInUse() {
+        ColumnarDataSheet sheet = sheet();
+
+        DataRow row = sheet.getDataRows().get(0);
+        String formatted = row.get(code).getFormattedValue();
+        assertEquals("\"A\"", formatted);
+        assertSame(formatted, sheet.cells(code).iterator().next().getFormattedValue());
+    }
+
+    @Test
+    public void primitiveColumnsFormatLikeCells() {
+        String[][] columns = {
+            {"NUMERIC", "3", "-12", "0", "2147483648"},
+            {"NUMERIC", "1.5", "3", "-0.25", ""},
+            {"NUMERIC", "7", "§", "", "40"},
+            {"DATE", "2021-03-04", "1999-12-31", "", "2000-01-01"},
+            {"BOOLEAN", "TRUE", "FALSE", "", "TRUE"}
+        };
+        List<Header> headers = new ArrayList<>();
+        ColumnarDataSheet.Builder builder = new ColumnarDataSheet.Builder();
+        for (int c = 0; c < columns.length; c++) {
+            // "§" nella colonna indica le virgolette forzate
+            boolean forced = Arrays.asList(columns[c]).contains("§");
+            headers.add(new Header((forced ? "§" : "") + "campo" + c, c));
+        }
+        for (int r = 1; r < columns[0].length; r++) {
+            for (int c = 0; c < columns.length; c++) {
+                DataCell cell = typedCell(headers.get(c), columns[c][0], columns[c][r].equals("§") ? "15" : columns[c][r]);
+                headers.get(c).inferFieldType(cell);
+                builder.cell(c, cell);
+            }
+            builder.endRow(r + 1);
+        }
+        ColumnarDataSheet sheet = builder.build("Misure", headers);
+
+        for (DataRow row : sheet.getDataRows()) {
+            for (DataCell cell : row.getDataCells()) {
+                // Tutte le colonne sono convertite in array primitivi
+                assertTrue(cell.getHeader().getValue(), cell.getClass() != DataCell.class);
+                DataCell expected = new DataCell(cell.getHeader(), cell.getCellType(), cell.isDateFormatted(), cell.getValue());
+                assertEquals(cell.getHeader().getValue() + " = " + cell.getValue(), expected.getFormattedValue(), cell.getFormattedValue());
+            }
+        }
+        assertEquals("\"15\"", sheet.getDataRows().get(1).get(2).getFormattedValue());
+    }
+
+    private static DataCell typedCell(Header header, String type, String value) {
+        if (value.isEmpty()) {
+            return new DataCell(header, CellType.BLANK, false, "");
+        }
+        if (type.equals("DATE")) {
+            return new DataCell(header, CellType.NUMERIC, true, value);
+        }
+        return new DataCell(header, CellType.valueOf(type), false, value);
+    }
+
+    private ColumnarDataSheet sheet() {
+        ColumnarDataSheet.Builder builder = new ColumnarDataSheet.Builder();
+        row(builder, 2, "A", "3");
+        row(builder, 3, "B", "12");
+        List<Header> headers = Arrays.asList(code, quantity);
+        return builder.build("Articolo", headers);
+    }
+
+    private void row(ColumnarDataSheet.Builder builder, int rowNumber, String codeValue, String quantityValue) {
+        DataCell codeCell = new DataCell(code, CellType.STRING, false, codeValue);
+        DataCell quantityCell = new DataCell(quantity, CellType.NUMERIC, false, quantityValue);
+        code.inferFieldType(codeCell);
+        quantity.inferFieldType(quantityCell);
+        builder.cell(0, codeCell);
+        builder.cell(1, quantityCell);
+        builder.endRow(rowNumber);
+    }
+}
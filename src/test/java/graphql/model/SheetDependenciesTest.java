@@ -0,0 +1,120 @@
+package graphql.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class SheetDependenciesTest {
+
+    @Test
+    public void referencesFollowTheCreatingSheet() {
+        SheetDependencies dependencies = dependencies(
+                sheet("A", "B.codice"),
+                sheet("B"));
+
+        assertEquals(set(1), dependencies.prerequisites(0));
+        assertEquals(set(), dependencies.prerequisites(1));
+        assertEquals(Arrays.asList(1, 0), dependencies.topologicalOrder());
+        assertTrue(dependencies.getBrokenCycles().isEmpty());
+    }
+
+    @Test
+    public void cycleIsBrokenAtItsFirstSheet() {
+        SheetDependencies dependencies = dependencies(
+                sheet("A", "B.codice"),
+                sheet("B", "A.codice"));
+
+        assertEquals(set(), dependencies.prerequisites(0));
+        assertEquals(set(0), dependencies.prerequisites(1));
+        assertEquals(Collections.singletonList("'A' importato prima di B"), dependencies.getBrokenCycles());
+    }
+
+    @Test
+    public void sheetDownstreamOfCycleKeepsItsDependency() {
+        SheetDependencies dependencies = dependencies(
+                sheet("A", "C.codice"),
+                sheet("B"),
+                sheet("C", "D.codice"),
+                sheet("D", "C.codice"));
+
+        assertEquals(set(2), dependencies.prerequisites(0));
+        assertEquals(set(), dependencies.prerequisites(2));
+        assertEquals(set(2), dependencies.prerequisites(3));
+        assertEquals(Collections.singletonList("'C' importato prima di D"), dependencies.getBrokenCycles());
+        assertEquals(Arrays.asList(1, 2, 0, 3), dependencies.topologicalOrder());
+    }
+
+    @Test
+    public void cycleWaitingForAnotherCycleIsBrokenAfterIt() {
+        SheetDependencies dependencies = dependencies(
+                sheet("A", "B.codice", "C.codice"),
+                sheet("B", "A.codice"),
+                sheet("C", "D.codice"),
+                sheet("D", "C.codice"));
+
+        assertEquals(set(2), dependencies.prerequisites(0));
+        assertEquals(set(0), dependencies.prerequisites(1));
+        assertEquals(set(), dependencies.prerequisites(2));
+        assertEquals(set(2), dependencies.prerequisites(3));
+        assertEquals(Arrays.asList("'C' importato prima di D", "'A' importato prima di B"), dependencies.getBrokenCycles());
+        assertEquals(4, dependencies.topologicalOrder().size());
+    }
+
+    @Test
+    public void deleteReversesImport() {
+        SheetDependencies dependencies = dependencies(
+                sheet("A", "B.codice"),
+                sheet("B"),
+                sheet("#C", "A.codice"));
+
+        assertEquals(Arrays.asList(set(2), set(0), set()), dependencies.forDelete());
+        assertEquals(3, dependencies.criticalPathLength());
+    }
+
+    @Test
+    public void compositionReferencesAreDeletedAfterTheComposedClass() {
+        SheetDependencies dependencies = dependencies(
+                sheet("Y"),
+                sheet("X"),
+                sheet("#X_Y", "X.codice", "Y.attr"));
+
+        assertEquals(set(1, 2), dependencies.forDelete().get(0));
+        assertEquals(set(2), dependencies.forDelete().get(1));
+        assertEquals(set(), dependencies.forDelete().get(2));
+    }
+
+    @Test
+    public void compositionEdgeThatWouldCloseACycleIsSkipped() {
+        SheetDependencies dependencies = dependencies(
+                sheet("Y", "X.codice"),
+                sheet("X"),
+                sheet("#X_Y", "X.codice", "Y.attr"));
+
+        // Y referenzia X: va cancellato prima, nonostante la composizione
+        assertEquals(set(2), dependencies.forDelete().get(0));
+        assertEquals(set(0, 2), dependencies.forDelete().get(1));
+    }
+
+    private static SheetDependencies dependencies(SheetMetadata... sheets) {
+        return new SheetDependencies(Arrays.asList(sheets));
+    }
+
+    private static SheetMetadata sheet(String name, String... references) {
+        List<Header> headers = new ArrayList<>();
+        headers.add(new Header("codice", 0));
+        for (String reference : references) {
+            headers.add(new Header("*" + reference, headers.size()));
+        }
+        return new SheetMetadata(name, headers, -1);
+    }
+
+    private static TreeSet<Integer> set(Integer... values) {
+        return new TreeSet<>(Arrays.asList(values));
+    }
+}